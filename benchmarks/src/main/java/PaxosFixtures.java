@@ -0,0 +1,113 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import benchmarks.Fixtures;
+
+/**
+ * Builds the library objects the benchmarks run against. Acceptors in memory are called on the proposer's thread,
+ * durable acceptors block until their log is on disk so each gets a pool of its own
+ */
+public class PaxosFixtures implements Fixtures {
+
+    @Override
+    public Group group(int acceptorNum, int proposerNum, Path dir) throws IOException {
+        List<DefaultAcceptor> acceptors = new ArrayList<>(acceptorNum);
+        for (int i = 0; i < acceptorNum; i++) {
+            acceptors.add(create("acceptor_" + i, dir));
+        }
+        List<ExecutorService> pools = new ArrayList<>();
+        List<AsyncAcceptor> asyncAcceptors = new ArrayList<>(acceptorNum);
+        for (DefaultAcceptor acceptor : acceptors) {
+            if (dir == null) {
+                asyncAcceptors.add(new AsyncAcceptorAdapter(acceptor, Runnable::run));
+            } else {
+                ExecutorService pool = Executors.newCachedThreadPool();
+                pools.add(pool);
+                asyncAcceptors.add(new AsyncAcceptorAdapter(acceptor, pool));
+            }
+        }
+        List<DefaultProposer> proposers = new ArrayList<>(proposerNum);
+        for (int i = 0; i < proposerNum; i++) {
+            proposers.add(new DefaultProposer(asyncAcceptors, i, proposerNum));
+        }
+        return group(proposers, acceptors, pools);
+    }
+
+    @Override
+    public Group blockingGroup(int acceptorNum, String executor, int threads, long latencyMicros) {
+        List<DefaultAcceptor> acceptors = new ArrayList<>(acceptorNum);
+        for (int i = 0; i < acceptorNum; i++) {
+            acceptors.add(new DefaultAcceptor("acceptor_" + i));
+        }
+        ExecutorService calls = "virtual".equals(executor) ? AcceptorExecutors.virtualThreads()
+                : AcceptorExecutors.pooled(threads);
+        DefaultProposer proposer = SlowAcceptor.proposer(acceptors, TimeUnit.MICROSECONDS.toNanos(latencyMicros),
+                calls);
+        return group(Collections.singletonList(proposer), acceptors, Collections.emptyList());
+    }
+
+    private static Group group(List<DefaultProposer> proposers, List<DefaultAcceptor> acceptors,
+                               List<ExecutorService> pools) {
+        return new Group() {
+
+            @Override
+            public Object propose(int proposer, Object var, Object value) {
+                return proposers.get(proposer).propose(var, value);
+            }
+
+            @Override
+            public CompletableFuture<Object> proposeAsync(int proposer, Object var, Object value) {
+                return proposers.get(proposer).proposeAsync(var, value);
+            }
+
+            @Override
+            public void close() throws IOException {
+                for (DefaultProposer proposer : proposers) {
+                    proposer.stop();
+                }
+                for (ExecutorService pool : pools) {
+                    pool.shutdownNow();
+                }
+                for (DefaultAcceptor acceptor : acceptors) {
+                    acceptor.close();
+                }
+            }
+        };
+    }
+
+    @Override
+    public Acceptor acceptor(Path dir) throws IOException {
+        DefaultAcceptor acceptor = create("acceptor", dir);
+        return new Acceptor() {
+
+            @Override
+            public boolean prepare(long epoch, Object var) {
+                return !acceptor.prepare(epoch, var).isNAK();
+            }
+
+            @Override
+            public boolean accept(long epoch, Object var, Object value) {
+                return !acceptor.accept(epoch, var, value).isNAK();
+            }
+
+            @Override
+            public void close() throws IOException {
+                acceptor.close();
+            }
+        };
+    }
+
+    private static DefaultAcceptor create(String name, Path dir) throws IOException {
+        if (dir == null) {
+            return new DefaultAcceptor(name);
+        }
+        return new DefaultAcceptor(name, new AcceptorLog(dir.resolve(name).toFile()));
+    }
+}
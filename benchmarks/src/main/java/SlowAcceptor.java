@@ -0,0 +1,55 @@
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Blocks the calling thread for the latency before every call, as a call to a remote acceptor would. It lives outside
+ * PaxosFixtures, where Acceptor names the fixture interface
+ */
+class SlowAcceptor implements Acceptor {
+
+    private final Acceptor acceptor;
+    private final long     latencyNanos;
+
+    SlowAcceptor(Acceptor acceptor, long latencyNanos) {
+        this.acceptor = acceptor;
+        this.latencyNanos = latencyNanos;
+    }
+
+    /**
+     * A proposer calling the acceptors, each slowed down by the latency, on the executor
+     */
+    static DefaultProposer proposer(List<DefaultAcceptor> acceptors, long latencyNanos, ExecutorService executor) {
+        Set<Acceptor> slow = new HashSet<>();
+        for (DefaultAcceptor acceptor : acceptors) {
+            slow.add(new SlowAcceptor(acceptor, latencyNanos));
+        }
+        return new DefaultProposer(slow, 0, 1, executor);
+    }
+
+    @Override
+    public Promise prepare(Long epoch, Object var) {
+        LockSupport.parkNanos(latencyNanos);
+        return acceptor.prepare(epoch, var);
+    }
+
+    @Override
+    public Accepted accept(Long epoch, Object var, Object value) {
+        LockSupport.parkNanos(latencyNanos);
+        return acceptor.accept(epoch, var, value);
+    }
+
+    @Override
+    public Promise prepareAll(Long epoch) {
+        LockSupport.parkNanos(latencyNanos);
+        return acceptor.prepareAll(epoch);
+    }
+
+    @Override
+    public Accepted acceptWithoutPrepare(Long epoch, Object var, Object value) {
+        LockSupport.parkNanos(latencyNanos);
+        return acceptor.acceptWithoutPrepare(epoch, var, value);
+    }
+}
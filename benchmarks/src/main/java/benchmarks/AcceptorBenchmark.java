@@ -0,0 +1,85 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * prepare and accept on one acceptor, in memory or with its log, every thread going round its own VARS vars with ever
+ * greater epochs so every call is ACKed. Scale the threads with -t, {@link TrackedRun} runs 1, 2, 4 and 8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AcceptorBenchmark {
+
+    static final int            VARS    = 1024;
+
+    @Param({ TempDirs.MEMORY, TempDirs.DURABLE })
+    public String               store;
+
+    private Path                dir;
+    private Fixtures.Acceptor   acceptor;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = TempDirs.create(store);
+        acceptor = Fixtures.INSTANCE.acceptor(dir);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        acceptor.close();
+        TempDirs.delete(dir);
+    }
+
+    @State(Scope.Thread)
+    public static class Caller {
+
+        final String[] vars = new String[VARS];
+        long           epoch;
+        int            next;
+
+        @Setup
+        public void setUp(AcceptorBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            for (int i = 0; i < VARS; i++) {
+                vars[i] = "thread_" + thread + "_var_" + i;
+            }
+        }
+
+        Object nextVar() {
+            Object var = vars[next];
+            next = (next + 1) & (VARS - 1);
+            return var;
+        }
+    }
+
+    @Benchmark
+    public boolean prepare(Caller caller) {
+        return acceptor.prepare(++caller.epoch, caller.nextVar());
+    }
+
+    @Benchmark
+    public boolean accept(Caller caller) {
+        return acceptor.accept(++caller.epoch, caller.nextVar(), Boolean.TRUE);
+    }
+}
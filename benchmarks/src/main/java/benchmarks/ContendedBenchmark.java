@@ -0,0 +1,76 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PROPOSERS proposers on threads of their own over 3 acceptors in memory. With one var they all propose for the same
+ * var until it is chosen and then move on to the next together, so every decision is contended. With many vars each
+ * op takes a var of its own
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(ContendedBenchmark.PROPOSERS)
+public class ContendedBenchmark {
+
+    static final int            PROPOSERS = 4;
+
+    @Param({ "one", "many" })
+    public String               vars;
+
+    private Fixtures.Group      group;
+    private final AtomicInteger ids       = new AtomicInteger();
+    private final AtomicLong    var       = new AtomicLong();
+
+    @Setup
+    public void setUp() throws IOException {
+        group = Fixtures.INSTANCE.group(3, PROPOSERS, null);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        group.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Proposer {
+
+        int id;
+
+        @Setup
+        public void setUp(ContendedBenchmark benchmark) {
+            id = benchmark.ids.getAndIncrement() % PROPOSERS;
+        }
+    }
+
+    @Benchmark
+    public Object decide(Proposer proposer) {
+        if ("many".equals(vars)) {
+            return group.propose(proposer.id, var.getAndIncrement(), proposer.id);
+        }
+        long current = var.get();
+        Object chosen = group.propose(proposer.id, current, proposer.id);
+        var.compareAndSet(current, current + 1);
+        return chosen;
+    }
+}
@@ -0,0 +1,78 @@
+package benchmarks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * One proposer over 3 blocking acceptors which take LATENCY_MICROS per call, as remote acceptors would, calling them
+ * on a pool of POOL_THREADS or on a virtual thread per call. Every op is a wave of as many proposals of new vars as
+ * there are clients, all in flight at once, so the score is waves per second and the decisions counter gives
+ * decisions per second
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecutorBenchmark {
+
+    static final int         POOL_THREADS   = 16;
+    static final long        LATENCY_MICROS = 200;
+
+    @Param({ "pooled", "virtual" })
+    public String            executor;
+
+    @Param({ "10", "100", "10000" })
+    public int               clients;
+
+    private Fixtures.Group   group;
+    private long             var;
+
+    @Setup
+    public void setUp() {
+        group = Fixtures.INSTANCE.blockingGroup(3, executor, POOL_THREADS, LATENCY_MICROS);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        group.close();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Decisions {
+
+        public long decisions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            decisions = 0;
+        }
+    }
+
+    @Benchmark
+    public void wave(Decisions counter) {
+        CompletableFuture<?>[] proposals = new CompletableFuture<?>[clients];
+        for (int i = 0; i < clients; i++) {
+            proposals[i] = group.proposeAsync(0, var++, Boolean.TRUE);
+        }
+        CompletableFuture.allOf(proposals).join();
+        counter.decisions += clients;
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What the benchmarks run against. The library lives in the default package, which JMH benchmarks can not import, so
+ * the benchmarks only see these interfaces and the default package class PaxosFixtures builds them
+ */
+public interface Fixtures {
+
+    Fixtures INSTANCE = load();
+
+    /**
+     * Proposers with ids 0 to proposerNum - 1 over one set of acceptors
+     *
+     * @param dir where durable acceptors keep their logs, null for acceptors in memory
+     */
+    Group group(int acceptorNum, int proposerNum, Path dir) throws IOException;
+
+    /**
+     * One proposer over blocking acceptors in memory, every call is held for the latency first as if the acceptor
+     * was remote
+     *
+     * @param executor what the proposer calls the acceptors on, "pooled" for a pool of the given threads or
+     *            "virtual" for a virtual thread per call
+     */
+    Group blockingGroup(int acceptorNum, String executor, int threads, long latencyMicros);
+
+    /**
+     * @param dir where the log is kept, null for an acceptor in memory
+     */
+    Acceptor acceptor(Path dir) throws IOException;
+
+    interface Group extends AutoCloseable {
+
+        /**
+         * @return the chosen value
+         */
+        Object propose(int proposer, Object var, Object value);
+
+        CompletableFuture<Object> proposeAsync(int proposer, Object var, Object value);
+
+        @Override
+        void close() throws IOException;
+    }
+
+    interface Acceptor extends AutoCloseable {
+
+        /**
+         * @return whether the prepare was ACKed
+         */
+        boolean prepare(long epoch, Object var);
+
+        /**
+         * @return whether the accept was ACKed
+         */
+        boolean accept(long epoch, Object var, Object value);
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private static Fixtures load() {
+        try {
+            return (Fixtures) Class.forName("PaxosFixtures").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("PaxosFixtures is missing from the classpath", e);
+        }
+    }
+}
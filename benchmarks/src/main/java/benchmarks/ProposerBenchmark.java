@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decisions of one proposer without contention, every op chooses a value for a new var. Run with -prof gc for the
+ * allocation per decision
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProposerBenchmark {
+
+    @Param({ "1", "3", "5" })
+    public int                acceptors;
+
+    @Param({ TempDirs.MEMORY, TempDirs.DURABLE })
+    public String             store;
+
+    private Path              dir;
+    private Fixtures.Group    group;
+    private long              var;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = TempDirs.create(store);
+        group = Fixtures.INSTANCE.group(acceptors, 1, dir);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        group.close();
+        TempDirs.delete(dir);
+    }
+
+    @Benchmark
+    public Object decide() {
+        return group.propose(0, var++, Boolean.TRUE);
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Directories for the logs of durable acceptors, gone after the trial
+ */
+final class TempDirs {
+
+    static final String MEMORY  = "memory";
+    static final String DURABLE = "durable";
+
+    private TempDirs() {
+    }
+
+    /**
+     * @return null for the store in memory
+     */
+    static Path create(String store) throws IOException {
+        return DURABLE.equals(store) ? Files.createTempDirectory("paxos-bench") : null;
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the gc profiler and compares every score, and the bytes allocated per op, with the
+ * baseline. A score worse than the baseline by more than the threshold is a regression and fails the run.
+ * <p>
+ * Arguments: [regex of the benchmarks] [-update-baseline] [-threshold 0.1] [-baseline baseline.properties]
+ */
+public final class TrackedRun {
+
+    private static final int[]  ACCEPTOR_THREADS = { 1, 2, 4, 8 };
+    private static final String ALLOCATION       = "gc.alloc.rate.norm";
+
+    private TrackedRun() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+        String include = ".*";
+        boolean updateBaseline = false;
+        double threshold = 0.1;
+        Path baselineFile = Paths.get("baseline.properties");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-update-baseline":
+                    updateBaseline = true;
+                    break;
+                case "-threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "-baseline":
+                    baselineFile = Paths.get(args[++i]);
+                    break;
+                default:
+                    include = args[i];
+            }
+        }
+
+        Map<String, Double> scores = new TreeMap<>();
+        String acceptor = Pattern.quote(AcceptorBenchmark.class.getName());
+        collect(run(options(include).exclude(acceptor)), scores);
+        if (Pattern.compile(include).matcher(AcceptorBenchmark.class.getName()).find()) {
+            for (int threads : ACCEPTOR_THREADS) {
+                collect(run(options(acceptor).threads(threads)), scores);
+            }
+        }
+
+        Properties baseline = new Properties();
+        if (Files.exists(baselineFile)) {
+            try (Reader reader = Files.newBufferedReader(baselineFile)) {
+                baseline.load(reader);
+            }
+        }
+        List<String> regressions = new ArrayList<>();
+        System.out.println();
+        for (Map.Entry<String, Double> score : scores.entrySet()) {
+            String before = baseline.getProperty(score.getKey());
+            String change = "new";
+            if (before != null) {
+                double ratio = score.getValue() / Double.parseDouble(before) - 1.0;
+                change = String.format("%+.1f%%", ratio * 100);
+                // throughput regresses when it falls, latency and allocation when they grow
+                boolean higherIsBetter = score.getKey().contains("[thrpt]");
+                if (higherIsBetter ? ratio < -threshold : ratio > threshold) {
+                    regressions.add(score.getKey() + " " + change);
+                }
+            }
+            System.out.printf("%-110s %14.3f %10s%n", score.getKey(), score.getValue(), change);
+        }
+
+        if (updateBaseline) {
+            for (Map.Entry<String, Double> score : scores.entrySet()) {
+                baseline.setProperty(score.getKey(), Double.toString(score.getValue()));
+            }
+            try (Writer writer = Files.newBufferedWriter(baselineFile)) {
+                baseline.store(writer, "benchmark scores, see benchmarks.TrackedRun");
+            }
+            System.out.println("baseline updated: " + baselineFile.toAbsolutePath());
+            return;
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println("regressions beyond " + threshold * 100 + "%:");
+            regressions.forEach(regression -> System.out.println("  " + regression));
+            System.exit(1);
+        }
+    }
+
+    private static ChainedOptionsBuilder options(String include) {
+        return new OptionsBuilder().include(include).addProfiler(GCProfiler.class);
+    }
+
+    private static Collection<RunResult> run(ChainedOptionsBuilder options) throws RunnerException {
+        return new Runner(options.build()).run();
+    }
+
+    private static void collect(Collection<RunResult> results, Map<String, Double> scores) {
+        for (RunResult result : results) {
+            String key = key(result.getParams());
+            Result<?> primary = result.getPrimaryResult();
+            scores.put(key + " [" + result.getParams().getMode().shortLabel() + "]", primary.getScore());
+            for (Map.Entry<String, Result> secondary : result.getSecondaryResults().entrySet()) {
+                if (secondary.getKey().endsWith(ALLOCATION)) {
+                    scores.put(key + " [" + result.getParams().getMode().shortLabel() + " B/op]",
+                            secondary.getValue().getScore());
+                }
+            }
+        }
+    }
+
+    private static String key(BenchmarkParams params) {
+        StringBuilder key = new StringBuilder(params.getBenchmark().replace("benchmarks.", ""));
+        for (String name : params.getParamsKeys()) {
+            key.append(' ').append(name).append('=').append(params.getParam(name));
+        }
+        return key.append(" threads=").append(params.getThreads()).toString();
+    }
+}
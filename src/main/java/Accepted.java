@@ -2,7 +2,8 @@ public class Accepted implements NAKAble {
 
     private Object  var;
     private Object  value;
-    private Long    epoch;
+    // VarStore.NO_EPOCH when absent
+    private long    epoch;
     private boolean NAK;
 
     public static Accepted create(Long epoch, Object var, Object value) {
@@ -13,7 +14,22 @@ public class Accepted implements NAKAble {
         return new Accepted(epoch, var, value, isNAK);
     }
 
+    public static Accepted create(long epoch, Object var, Object value) {
+        return new Accepted(epoch, var, value, false);
+    }
+
+    public static Accepted create(long epoch, Object var, Object value, boolean isNAK) {
+        return new Accepted(epoch, var, value, isNAK);
+    }
+
     public Accepted(Long epoch, Object var, Object value, boolean isNAK){
+        this(Promise.toEpoch(epoch), var, value, isNAK);
+    }
+
+    /**
+     * @param epoch VarStore.NO_EPOCH when absent
+     */
+    public Accepted(long epoch, Object var, Object value, boolean isNAK){
         this.epoch = epoch;
         this.var = var;
         this.value = value;
@@ -29,6 +45,13 @@ public class Accepted implements NAKAble {
     }
 
     public Long getEpoch() {
+        return Promise.toLong(epoch);
+    }
+
+    /**
+     * @return the epoch without boxing, VarStore.NO_EPOCH when absent
+     */
+    public long getEpochAsLong() {
         return epoch;
     }
 
@@ -3,4 +3,27 @@ public interface Acceptor {
     Promise prepare(Long epoch, Object var);
 
     Accepted accept(Long epoch, Object var, Object value);
+
+    /**
+     * Multi-Paxos phase 1: promise the epoch for every var at once, so the leader holding it can skip the per-var
+     * prepare for vars that have not been written yet. An acceptor without Multi-Paxos support NAKs it, so the
+     * proposer falls back to a full round for every var
+     *
+     * @return an ACK carries every var the acceptor holds a value for, the leader must not skip phase 1 for them
+     */
+    default Promise prepareAll(Long epoch) {
+        return Promise.create(epoch, null, null, true);
+    }
+
+    /**
+     * Multi-Paxos phase 2: accept the value without a per-var prepare. The acceptor only ACKs when the epoch is the
+     * leader epoch promised by {@link #prepareAll(Long)} and the var holds no value yet, otherwise the proposer has to
+     * fall back to a full round
+     *
+     * @return an ACK when the value was accepted, a NAK with a greater epoch when the leader was preempted, or with
+     *         the same epoch when the var needs phase 1
+     */
+    default Accepted acceptWithoutPrepare(Long epoch, Object var, Object value) {
+        return Accepted.create(epoch, var, null, true);
+    }
 }
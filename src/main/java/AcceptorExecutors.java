@@ -0,0 +1,61 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The executors a {@link DefaultProposer} may call blocking acceptors on. A pool caps the calls in flight at its
+ * threads, once they are busy and its queue is full the proposing thread makes the call itself. Virtual threads give
+ * every call a thread of its own, so any number of proposals may block on acceptors at once
+ */
+public abstract class AcceptorExecutors {
+
+    // Executors.newVirtualThreadPerTaskExecutor, looked up at runtime so the library still runs before Java 21
+    private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK = findVirtualThreadPerTask();
+
+    /**
+     * @param threads the threads, and the calls which may wait for one of them
+     */
+    public static ExecutorService pooled(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads should be positive, but is " + threads);
+        }
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(threads),
+                new CallerRunsPolicy());
+    }
+
+    /**
+     * A virtual thread per call
+     *
+     * @throws UnsupportedOperationException before Java 21
+     */
+    public static ExecutorService virtualThreads() {
+        if (NEW_VIRTUAL_THREAD_PER_TASK == null) {
+            throw new UnsupportedOperationException("virtual threads need Java 21, but this is Java "
+                    + System.getProperty("java.specification.version"));
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK.invokeExact();
+        } catch (Throwable e) {
+            throw new IllegalStateException("fail to create a virtual thread executor", e);
+        }
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK != null;
+    }
+
+    private static MethodHandle findVirtualThreadPerTask() {
+        try {
+            return MethodHandles.publicLookup().findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                    MethodType.methodType(ExecutorService.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,712 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.ObjectCodec;
+
+/**
+ * An append-only write-ahead log of the promises and accepts of a {@link DefaultAcceptor}. Appends only buffer the
+ * record and return its sequence, a single writer thread writes everything buffered so far and calls
+ * {@link FileChannel#force(boolean)} once for the whole group, so concurrent prepare/accept share one fsync.
+ * <p>
+ * The log is split into segments named by the sequence of their first record. A snapshot of the whole acceptor state
+ * up to some sequence lets every segment before it be deleted, so recovery loads the latest snapshot and replays only
+ * the records after it.
+ * <p>
+ * A record is framed as [int length][int crc32][byte type][varint epoch][var][value], a torn record at the tail is cut
+ * off on replay.
+ * <p>
+ * Waiting is done on a {@link ReentrantLock} rather than a monitor, so a virtual thread waiting for its record to be
+ * on disk does not pin its carrier thread
+ */
+public class AcceptorLog implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AcceptorLog.class);
+
+    static final byte PROMISE = 1;
+    static final byte ACCEPT = 2;
+    static final byte LEADER = 3;
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final int SNAPSHOT_MAGIC = 0x50415853;
+    private static final byte SNAPSHOT_VAR = 1;
+    private static final byte SNAPSHOT_END = 0;
+    private static final int HEADER_SIZE = 8;
+    // put into the buffered records to start a new segment after the records before it
+    private static final byte[] ROLL = new byte[0];
+
+    private final File dir;
+    private FileChannel channel;
+    private File segment;
+    private final Thread writer;
+    // guards everything below
+    private final ReentrantLock lock = new ReentrantLock();
+    // signalled to the writer when records are buffered or the log closes
+    private final Condition appended = lock.newCondition();
+    // signalled to appenders when records are durable, a roll is done, the writer failed or the log closes
+    private final Condition written = lock.newCondition();
+    private List<byte[]> buffered = new ArrayList<>();
+    private long appendedSequence = 0L;
+    private long durableSequence = 0L;
+    private long fsyncNum = 0L;
+    private long dirSyncNum = 0L;
+    private long rollsRequested = 0L;
+    private long rollsDone = 0L;
+    private IOException failure;
+    private volatile boolean closed = false;
+
+    public AcceptorLog(File dir) throws IOException {
+        if (!dir.isDirectory()) {
+            if (!dir.mkdirs()) {
+                throw new IOException("can not create log dir " + dir);
+            }
+            File parent = dir.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                sync(parent);
+            }
+        }
+        this.dir = dir;
+        this.writer = new Thread(this::runWriter, "acceptor_log_writer_" + dir.getName());
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * Loads the latest snapshot and replays every intact record after it in order, then starts taking appends after
+     * the last one
+     */
+    public void replay(Replayer replayer) throws IOException {
+        lock.lock();
+        try {
+            replayLocked(replayer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replayLocked(Replayer replayer) throws IOException {
+        if (writer.isAlive()) {
+            throw new IllegalStateException("replay must be done before the first append");
+        }
+        long snapshotSequence = loadSnapshot(replayer);
+
+        TreeMap<Long, File> segments = files(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        long sequence = snapshotSequence;
+        int records = 0;
+        File last = null;
+        long lastEnd = 0L;
+        for (Map.Entry<Long, File> entry : segments.entrySet()) {
+            long next = entry.getKey();
+            try (FileChannel segmentChannel = FileChannel.open(entry.getValue().toPath(), StandardOpenOption.READ)) {
+                long position = 0L;
+                long size = segmentChannel.size();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (position + HEADER_SIZE <= size) {
+                    header.clear();
+                    segmentChannel.read(header, position);
+                    header.flip();
+                    int length = header.getInt();
+                    int crc = header.getInt();
+                    if (length <= 0 || position + HEADER_SIZE + length > size) {
+                        break;
+                    }
+                    ByteBuffer body = ByteBuffer.allocate(length);
+                    segmentChannel.read(body, position + HEADER_SIZE);
+                    if (crc != crc(body.array(), 0, length)) {
+                        break;
+                    }
+                    if (next > snapshotSequence) {
+                        apply(body.array(), replayer);
+                        records++;
+                    }
+                    position += HEADER_SIZE + length;
+                    next++;
+                }
+                last = entry.getValue();
+                lastEnd = position;
+            }
+            sequence = Math.max(sequence, next - 1);
+        }
+
+        if (last == null) {
+            last = segmentFile(sequence + 1);
+        }
+        boolean created = !last.exists();
+        this.segment = last;
+        this.channel = FileChannel.open(last.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        if (created) {
+            syncDir();
+        }
+        if (channel.size() > lastEnd) {
+            LOG.warn("cut off torn tail of [{}] at [{}], size was [{}]", last, lastEnd, channel.size());
+            channel.truncate(lastEnd);
+        }
+        channel.position(lastEnd);
+        this.appendedSequence = sequence;
+        this.durableSequence = sequence;
+        LOG.info("replayed snapshot at [{}] and [{}] records after it from [{}]", snapshotSequence, records, dir);
+        writer.start();
+    }
+
+    private long loadSnapshot(Replayer replayer) throws IOException {
+        TreeMap<Long, File> snapshots = files(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        for (Long sequence : snapshots.descendingKeySet()) {
+            File file = snapshots.get(sequence);
+            if (isIntact(file)) {
+                readSnapshot(file, replayer);
+                return sequence;
+            }
+            LOG.warn("skip broken snapshot [{}]", file);
+        }
+        return 0L;
+    }
+
+    private static boolean isIntact(File file) {
+        long length = file.length();
+        if (length < 4) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[8192];
+            long remaining = length - 4;
+            while (remaining > 0) {
+                int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (n < 0) {
+                    return false;
+                }
+                crc.update(buffer, 0, n);
+                remaining -= n;
+            }
+            return in.readInt() == (int) crc.getValue();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void readSnapshot(File file, Replayer replayer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("not a snapshot " + file);
+            }
+            in.readLong();
+            replayer.onLeader(in.readLong());
+            while (in.readByte() == SNAPSHOT_VAR) {
+                Object var = ObjectCodec.read(in);
+                long promisedEpoch = ObjectCodec.readVarLong(in);
+                long acceptedEpoch = ObjectCodec.readVarLong(in);
+                Object value = ObjectCodec.read(in);
+                replayer.onPromise(var, promisedEpoch);
+                if (value != null) {
+                    replayer.onAccept(var, acceptedEpoch, value);
+                }
+            }
+        }
+    }
+
+    private static void apply(byte[] record, Replayer replayer) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        long epoch = ObjectCodec.readVarLong(in);
+        switch (type) {
+            case PROMISE:
+                replayer.onPromise(ObjectCodec.read(in), epoch);
+                break;
+            case ACCEPT:
+                Object var = ObjectCodec.read(in);
+                replayer.onAccept(var, epoch, ObjectCodec.read(in));
+                break;
+            case LEADER:
+                replayer.onLeader(epoch);
+                break;
+            default:
+                throw new IOException("unknown record type " + type);
+        }
+    }
+
+    public long appendPromise(Object var, long epoch) {
+        return append(PROMISE, epoch, var, null);
+    }
+
+    public long appendAccept(Object var, long epoch, Object value) {
+        return append(ACCEPT, epoch, var, value);
+    }
+
+    public long appendLeader(long epoch) {
+        return append(LEADER, epoch, null, null);
+    }
+
+    private long append(byte type, long epoch, Object var, Object value) {
+        byte[] record = encode(type, epoch, var, value);
+        lock.lock();
+        try {
+            if (closed) {
+                throw new PaxosException("acceptor log " + dir + " was closed");
+            }
+            buffered.add(record);
+            appendedSequence++;
+            appended.signal();
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] encode(byte type, long epoch, Object var, Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.writeByte(type);
+            ObjectCodec.writeVarLong(out, epoch);
+            if (type != LEADER) {
+                ObjectCodec.write(out, var);
+            }
+            if (type == ACCEPT) {
+                ObjectCodec.write(out, value);
+            }
+            byte[] record = bytes.toByteArray();
+            ByteBuffer frame = ByteBuffer.wrap(record);
+            frame.putInt(record.length - HEADER_SIZE);
+            frame.putInt(crc(record, HEADER_SIZE, record.length - HEADER_SIZE));
+            return record;
+        } catch (IOException e) {
+            throw new PaxosException("fail to encode record of var " + var, e);
+        }
+    }
+
+    /**
+     * @return the sequence of the last appended record
+     */
+    public long lastSequence() {
+        lock.lock();
+        try {
+            return appendedSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Blocks until every record up to the sequence is on disk
+     */
+    public void awaitDurable(long sequence) {
+        lock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (failure != null) {
+                    throw new PaxosException("acceptor log " + dir + " failed", failure);
+                }
+                if (closed) {
+                    throw new PaxosException("acceptor log " + dir + " was closed");
+                }
+                try {
+                    written.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PaxosException("waiting for acceptor log was interrupted", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new segment after every record appended so far
+     *
+     * @return the sequence of the last record before the new segment
+     */
+    public long roll() {
+        lock.lock();
+        try {
+            if (!writer.isAlive()) {
+                throw new IllegalStateException("roll must be done after replay");
+            }
+            buffered.add(ROLL);
+            long sequence = appendedSequence;
+            long ticket = ++rollsRequested;
+            appended.signal();
+            while (rollsDone < ticket) {
+                if (failure != null) {
+                    throw new PaxosException("acceptor log " + dir + " failed", failure);
+                }
+                if (closed) {
+                    throw new PaxosException("acceptor log " + dir + " was closed");
+                }
+                try {
+                    written.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PaxosException("waiting for acceptor log roll was interrupted", e);
+                }
+            }
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot holding the state after every record up to the sequence, then deletes the segments and the
+     * snapshots it replaces. The state may already contain later changes, replaying them again is harmless
+     */
+    public void snapshot(long sequence, long leaderEpoch, SnapshotSource source) throws IOException {
+        File file = new File(dir, SNAPSHOT_PREFIX + pad(sequence) + SNAPSHOT_SUFFIX);
+        File tmp = new File(dir, file.getName() + ".tmp");
+        int vars;
+        try (FileOutputStream fileOut = new FileOutputStream(tmp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(fileOut), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(sequence);
+            out.writeLong(leaderEpoch);
+            SnapshotWriter snapshotWriter = new SnapshotWriter(out);
+            source.writeTo(snapshotWriter);
+            out.writeByte(SNAPSHOT_END);
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            fileOut.getFD().sync();
+            vars = snapshotWriter.vars;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        // the new name must be on disk before the files it replaces are gone
+        syncDir();
+        LOG.info("wrote snapshot [{}] with [{}] vars", file, vars);
+        compact(sequence);
+    }
+
+    /**
+     * Makes the names in the log dir durable, a record in a new segment is not durable before its name is
+     */
+    private void syncDir() throws IOException {
+        sync(dir);
+        lock.lock();
+        try {
+            dirSyncNum++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void sync(File dir) throws IOException {
+        try (FileChannel dirChannel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            dirChannel.force(true);
+        }
+    }
+
+    /**
+     * Deletes every segment whose records are all covered by the snapshot at the sequence, and older snapshots
+     */
+    private void compact(long sequence) {
+        TreeMap<Long, File> segments = files(SEGMENT_PREFIX, SEGMENT_SUFFIX);
+        File current = getFile();
+        for (Map.Entry<Long, File> entry : segments.entrySet()) {
+            Long nextStart = segments.higherKey(entry.getKey());
+            if (nextStart == null || nextStart - 1 > sequence || entry.getValue().equals(current)) {
+                break;
+            }
+            delete(entry.getValue());
+        }
+        for (Map.Entry<Long, File> entry : files(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).entrySet()) {
+            if (entry.getKey() < sequence) {
+                delete(entry.getValue());
+            }
+        }
+    }
+
+    private static void delete(File file) {
+        if (file.delete()) {
+            LOG.info("deleted [{}]", file);
+        } else {
+            LOG.warn("fail to delete [{}]", file);
+        }
+    }
+
+    private void runWriter() {
+        long writtenSequence = appendedSequenceAtStart();
+        while (true) {
+            List<byte[]> group;
+            long groupSequence;
+            lock.lock();
+            try {
+                while (buffered.isEmpty() && !closed) {
+                    try {
+                        appended.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (buffered.isEmpty()) {
+                    return;
+                }
+                group = buffered;
+                groupSequence = appendedSequence;
+                buffered = new ArrayList<>(group.size());
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                int from = 0;
+                for (int i = 0; i < group.size(); i++) {
+                    if (group.get(i) == ROLL) {
+                        write(group, from, i);
+                        writtenSequence += i - from;
+                        from = i + 1;
+                        channel.force(false);
+                        openSegment(writtenSequence + 1);
+                        rolled();
+                    }
+                }
+                write(group, from, group.size());
+                channel.force(false);
+            } catch (IOException e) {
+                LOG.error("fail to write acceptor log " + dir, e);
+                lock.lock();
+                try {
+                    failure = e;
+                    written.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            writtenSequence = groupSequence;
+            lock.lock();
+            try {
+                durableSequence = groupSequence;
+                fsyncNum++;
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private long appendedSequenceAtStart() {
+        lock.lock();
+        try {
+            return durableSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void openSegment(long startSequence) throws IOException {
+        File file = segmentFile(startSequence);
+        if (file.equals(segment)) {
+            return;
+        }
+        FileChannel next = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            syncDir();
+        } catch (IOException e) {
+            next.close();
+            throw e;
+        }
+        FileChannel previous = channel;
+        lock.lock();
+        try {
+            channel = next;
+            segment = file;
+        } finally {
+            lock.unlock();
+        }
+        previous.close();
+    }
+
+    private void rolled() {
+        lock.lock();
+        try {
+            rollsDone++;
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<byte[]> group, int from, int to) throws IOException {
+        int size = 0;
+        for (int i = from; i < to; i++) {
+            size += group.get(i).length;
+        }
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        for (int i = from; i < to; i++) {
+            buffer.put(group.get(i));
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private File segmentFile(long startSequence) {
+        return new File(dir, SEGMENT_PREFIX + pad(startSequence) + SEGMENT_SUFFIX);
+    }
+
+    private TreeMap<Long, File> files(String prefix, String suffix) {
+        TreeMap<Long, File> files = new TreeMap<>();
+        File[] listed = dir.listFiles();
+        if (listed == null) {
+            return files;
+        }
+        for (File file : Arrays.asList(listed)) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    LOG.warn("ignore unknown file [{}]", file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static String pad(long sequence) {
+        return String.format("%020d", sequence);
+    }
+
+    /**
+     * @return how many fsyncs were needed so far, far fewer than records under concurrent load
+     */
+    public long getFsyncNum() {
+        lock.lock();
+        try {
+            return fsyncNum;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return how many times the names in the log dir were made durable, once for every segment created and every
+     *         snapshot
+     */
+    public long getDirSyncNum() {
+        lock.lock();
+        try {
+            return dirSyncNum;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the segment being appended to
+     */
+    public File getFile() {
+        lock.lock();
+        try {
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            appended.signal();
+            written.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (writer.isAlive()) {
+                writer.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Receives the records of the log in the order they were appended
+     */
+    public interface Replayer {
+
+        void onPromise(Object var, long epoch);
+
+        void onAccept(Object var, long epoch, Object value);
+
+        void onLeader(long epoch);
+    }
+
+    /**
+     * Writes the state of every var into a snapshot
+     */
+    public interface SnapshotSource {
+
+        void writeTo(SnapshotWriter writer) throws IOException;
+    }
+
+    public static class SnapshotWriter {
+
+        private final DataOutputStream out;
+        private int vars = 0;
+
+        SnapshotWriter(DataOutputStream out) {
+            this.out = out;
+        }
+
+        public void write(Object var, long promisedEpoch, long acceptedEpoch, Object value) throws IOException {
+            out.writeByte(SNAPSHOT_VAR);
+            ObjectCodec.write(out, var);
+            ObjectCodec.writeVarLong(out, promisedEpoch);
+            ObjectCodec.writeVarLong(out, acceptedEpoch);
+            ObjectCodec.write(out, value);
+            vars++;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/**
+ * One call to an {@link Acceptor}, so calls for different vars can travel and be handled together
+ */
+public class AcceptorRequest {
+
+    public enum Type {
+        PREPARE, ACCEPT, PREPARE_ALL, ACCEPT_WITHOUT_PREPARE
+    }
+
+    private final Type   type;
+    private final Long   epoch;
+    private final Object var;
+    private final Object value;
+
+    public AcceptorRequest(Type type, Long epoch, Object var, Object value){
+        this.type = type;
+        this.epoch = epoch;
+        this.var = var;
+        this.value = value;
+    }
+
+    public static AcceptorRequest prepare(Long epoch, Object var) {
+        return new AcceptorRequest(Type.PREPARE, epoch, var, null);
+    }
+
+    public static AcceptorRequest accept(Long epoch, Object var, Object value) {
+        return new AcceptorRequest(Type.ACCEPT, epoch, var, value);
+    }
+
+    public static AcceptorRequest prepareAll(Long epoch) {
+        return new AcceptorRequest(Type.PREPARE_ALL, epoch, null, null);
+    }
+
+    public static AcceptorRequest acceptWithoutPrepare(Long epoch, Object var, Object value) {
+        return new AcceptorRequest(Type.ACCEPT_WITHOUT_PREPARE, epoch, var, value);
+    }
+
+    /**
+     * Makes the call on the acceptor
+     *
+     * @return a {@link Promise} or an {@link Accepted}
+     */
+    public NAKAble callOn(Acceptor acceptor) {
+        switch (type) {
+            case PREPARE:
+                return acceptor.prepare(epoch, var);
+            case ACCEPT:
+                return acceptor.accept(epoch, var, value);
+            case PREPARE_ALL:
+                return acceptor.prepareAll(epoch);
+            default:
+                return acceptor.acceptWithoutPrepare(epoch, var, value);
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Long getEpoch() {
+        return epoch;
+    }
+
+    public Object getVar() {
+        return var;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.ObjectCodec;
+
+/**
+ * Serves an {@link Acceptor} over TCP to {@link RemoteAcceptor}s. Frames are read on one selector thread and the
+ * acceptor is called on a pool of threads, since a durable acceptor blocks until its log is on disk. Responses go back
+ * in the order they are ready, the request id matches them up. A batch of calls is handed to a {@link BatchAcceptor}
+ * in one go and answered with one batch
+ */
+public class AcceptorServer implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AcceptorServer.class);
+
+    private final Acceptor            acceptor;
+    private final ServerSocketChannel server;
+    private final InetSocketAddress   address;
+    private final ExecutorService     executor;
+    private final WireLoop            loop;
+
+    public AcceptorServer(Acceptor acceptor, InetSocketAddress address, int threads) throws IOException {
+        this.acceptor = acceptor;
+        this.server = ServerSocketChannel.open();
+        this.server.bind(address);
+        this.address = (InetSocketAddress) server.getLocalAddress();
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "acceptor_server_" + this.address.getPort() + "_"
+                    + sequence.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.loop = new WireLoop("acceptor_server_loop_" + this.address.getPort());
+        this.loop.listen(server, new Handler());
+        LOG.info("acceptor server listening on [{}]", this.address);
+    }
+
+    /**
+     * @return the address it listens on, with the real port when bound to port 0
+     */
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    private void handle(WireLoop.Connection connection, byte[] frame) {
+        long id = -1L;
+        ByteBuffer response;
+        try {
+            DataInputStream in = WireProtocol.open(frame);
+            byte type = in.readByte();
+            id = ObjectCodec.readVarLong(in);
+            if (type == WireProtocol.BATCH) {
+                handleBatch(connection, WireProtocol.readBatch(in));
+                return;
+            }
+            response = WireProtocol.response(id, WireProtocol.readRequest(type, in).callOn(acceptor));
+        } catch (Exception e) {
+            LOG.error("fail to serve request " + id, e);
+            response = error(connection, id, e);
+        }
+        send(connection, response);
+    }
+
+    /**
+     * Hands the whole batch to a {@link BatchAcceptor} and sends all responses back in one frame. When that fails every
+     * call of the batch is answered with an error, and a batch whose ids can not all be read closes the connection
+     */
+    private void handleBatch(WireLoop.Connection connection, List<byte[]> frames) {
+        long[] ids = new long[frames.size()];
+        int idsRead = 0;
+        try {
+            List<AcceptorRequest> requests = new ArrayList<>(frames.size());
+            for (int i = 0; i < frames.size(); i++) {
+                DataInputStream in = WireProtocol.open(frames.get(i));
+                byte type = in.readByte();
+                ids[i] = ObjectCodec.readVarLong(in);
+                idsRead++;
+                requests.add(WireProtocol.readRequest(type, in));
+            }
+            List<NAKAble> results;
+            if (acceptor instanceof BatchAcceptor) {
+                results = ((BatchAcceptor) acceptor).handle(requests);
+            } else {
+                results = new ArrayList<>(requests.size());
+                for (AcceptorRequest request : requests) {
+                    results.add(request.callOn(acceptor));
+                }
+            }
+            List<ByteBuffer> responses = new ArrayList<>(frames.size());
+            for (int i = 0; i < ids.length; i++) {
+                responses.add(WireProtocol.response(ids[i], results.get(i)));
+            }
+            send(connection, WireProtocol.batch(responses));
+        } catch (Exception e) {
+            LOG.error("fail to serve batch of " + ids.length + " requests", e);
+            if (idsRead < ids.length) {
+                connection.close(new IOException("malformed batch", e));
+                return;
+            }
+            List<ByteBuffer> errors = new ArrayList<>(ids.length);
+            for (long id : ids) {
+                ByteBuffer error = error(connection, id, e);
+                if (error == null) {
+                    return;
+                }
+                errors.add(error);
+            }
+            try {
+                send(connection, WireProtocol.batch(errors));
+            } catch (IOException encodeFailure) {
+                connection.close(encodeFailure);
+            }
+        }
+    }
+
+    private static ByteBuffer error(WireLoop.Connection connection, long id, Exception e) {
+        try {
+            return WireProtocol.error(id, String.valueOf(e));
+        } catch (IOException encodeFailure) {
+            connection.close(encodeFailure);
+            return null;
+        }
+    }
+
+    private static void send(WireLoop.Connection connection, ByteBuffer response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            connection.send(response);
+        } catch (IOException e) {
+            LOG.warn("fail to respond, {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        loop.close();
+        server.close();
+        executor.shutdownNow();
+    }
+
+    private class Handler implements WireLoop.FrameHandler {
+
+        @Override
+        public void onFrame(WireLoop.Connection connection, byte[] frame) {
+            executor.execute(() -> handle(connection, frame));
+        }
+
+        @Override
+        public void onClose(WireLoop.Connection connection, IOException cause) {
+            if (cause != null) {
+                LOG.warn("connection closed, {}", cause.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The non-blocking counterpart of {@link Acceptor}, every call returns at once and the response completes the future
+ */
+public interface AsyncAcceptor {
+
+    CompletableFuture<Promise> prepareAsync(Long epoch, Object var);
+
+    CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value);
+
+    CompletableFuture<Promise> prepareAllAsync(Long epoch);
+
+    CompletableFuture<Accepted> acceptWithoutPrepareAsync(Long epoch, Object var, Object value);
+}
@@ -0,0 +1,57 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Runs a blocking {@link Acceptor} on an executor to expose it as an {@link AsyncAcceptor}. A call cancelled before it
+ * got a thread is never sent to the acceptor
+ */
+public class AsyncAcceptorAdapter implements AsyncAcceptor {
+
+    private final Acceptor acceptor;
+    private final Executor executor;
+
+    public AsyncAcceptorAdapter(Acceptor acceptor, Executor executor){
+        this.acceptor = acceptor;
+        this.executor = executor;
+    }
+
+    @Override
+    public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+        return call(() -> acceptor.prepare(epoch, var));
+    }
+
+    @Override
+    public CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value) {
+        return call(() -> acceptor.accept(epoch, var, value));
+    }
+
+    @Override
+    public CompletableFuture<Promise> prepareAllAsync(Long epoch) {
+        return call(() -> acceptor.prepareAll(epoch));
+    }
+
+    @Override
+    public CompletableFuture<Accepted> acceptWithoutPrepareAsync(Long epoch, Object var, Object value) {
+        return call(() -> acceptor.acceptWithoutPrepare(epoch, var, value));
+    }
+
+    private <T> CompletableFuture<T> call(Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(call.get());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    public Acceptor getAcceptor() {
+        return acceptor;
+    }
+}
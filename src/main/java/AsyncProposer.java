@@ -0,0 +1,16 @@
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncProposer {
+
+    /**
+     * @return a future of the chosen value of the var, which may not be the proposed value
+     */
+    CompletableFuture<Object> proposeAsync(Object var, Object value);
+
+    /**
+     * @return a future of the chosen value of the var, null when none is chosen yet
+     */
+    CompletableFuture<Object> readAsync(Object var);
+
+    void stop();
+}
@@ -0,0 +1,53 @@
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The values of one log slot, decided together by a single Paxos instance. Two batches are equal only when they come
+ * from the same append batch, so a proposer can tell whether the chosen value of a slot is its own batch
+ */
+public class Batch implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String       id;
+    private final List<Object> values;
+
+    public Batch(String id, List<Object> values){
+        this.id = id;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<Object> getValues() {
+        return values;
+    }
+
+    public int size() {
+        return values.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Batch)) {
+            return false;
+        }
+        return id.equals(((Batch) o).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "Batch[" + id + ", size=" + values.size() + "]";
+    }
+}
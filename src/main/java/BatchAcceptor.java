@@ -0,0 +1,12 @@
+import java.util.List;
+
+/**
+ * An {@link Acceptor} which can handle calls for many vars in one go, cheaper than one call at a time
+ */
+public interface BatchAcceptor extends Acceptor {
+
+    /**
+     * @return the {@link Promise} or {@link Accepted} of every request, in the same order
+     */
+    List<NAKAble> handle(List<AcceptorRequest> requests);
+}
@@ -0,0 +1,63 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Waits on an {@link AsyncAcceptor} to expose it as a blocking {@link Acceptor}
+ */
+public class BlockingAcceptorAdapter implements Acceptor {
+
+    private final AsyncAcceptor acceptor;
+
+    public BlockingAcceptorAdapter(AsyncAcceptor acceptor){
+        this.acceptor = acceptor;
+    }
+
+    @Override
+    public Promise prepare(Long epoch, Object var) {
+        return await(acceptor.prepareAsync(epoch, var));
+    }
+
+    @Override
+    public Accepted accept(Long epoch, Object var, Object value) {
+        return await(acceptor.acceptAsync(epoch, var, value));
+    }
+
+    @Override
+    public Promise prepareAll(Long epoch) {
+        return await(acceptor.prepareAllAsync(epoch));
+    }
+
+    @Override
+    public Accepted acceptWithoutPrepare(Long epoch, Object var, Object value) {
+        return await(acceptor.acceptWithoutPrepareAsync(epoch, var, value));
+    }
+
+    public AsyncAcceptor getAcceptor() {
+        return acceptor;
+    }
+
+    /**
+     * Waits for the future, rethrowing its failure as it is when it is a RuntimeException
+     */
+    static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PaxosException("waiting for the response was interrupted", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    static RuntimeException unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        return new PaxosException(e);
+    }
+}
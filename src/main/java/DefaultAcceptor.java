@@ -1,77 +1,558 @@
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
-import util.MDCs;
+import util.Clock;
 
-public class DefaultAcceptor implements Acceptor {
+/**
+ * Keeps the state of every var in a {@link VarStore}, each var guarded by one of a fixed set of striped locks, so
+ * prepare and accept on unrelated vars run in parallel. prepareAll takes every stripe, since the leader epoch covers
+ * all vars. The state lives on the heap by default, a {@link MappedVarStore} keeps it off the heap instead.
+ * <p>
+ * With an {@link AcceptorLog} every change is appended to the log under the stripe lock, and the response is only
+ * returned once the log is durable up to that point, so a restarted acceptor never forgets what it promised. A
+ * snapshot copies one var at a time under its stripe lock, so it never stops the acceptor, and lets the log drop every
+ * segment before it.
+ * <p>
+ * With a lease, an ACK of prepareAll also grants the leader a lease: until it runs out, epochs of any other proposer
+ * are refused, so nothing can be chosen behind the leader's back and it may answer reads on its own. prepareAll with
+ * the current leader epoch renews the lease
+ */
+public class DefaultAcceptor implements BatchAcceptor {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultAcceptor.class);
 
     private static final AtomicInteger SEQUENCE = new AtomicInteger();
     private static final String NAME_PREFIX = "acceptor_";
+    private static final long NO_EPOCH = VarStore.NO_EPOCH;
+    private static final int DEFAULT_STRIPES = stripesFor(Runtime.getRuntime().availableProcessors() * 4);
 
     private final String name;
-    private Map<Object, Object> values = new ConcurrentHashMap<>();
-    private Map<Object, Long> lastestEpoches = new ConcurrentHashMap<>();
+    private final VarStore store;
+    private final ReentrantLock[] stripes;
+    // the epoch promised to the Multi-Paxos leader, it covers every var
+    private volatile long leaderEpoch;
+    // the greatest epoch promised for any var, a leader has to beat it
+    private final AtomicLong maxEpoch = new AtomicLong(NO_EPOCH);
+    private final AcceptorLog log;
+    private ScheduledExecutorService snapshotter;
+    private volatile Clock clock = Clock.SYSTEM;
+    private volatile long leaseNanos = 0L;
+    private volatile int proposerNum = 1;
+    private volatile long leaseExpiresNanos;
+    private volatile Metrics metrics;
+    private volatile Metrics.Histogram lockWait;
+    private volatile Metrics.Histogram durableWait;
+    private volatile Tracer tracer;
+    private volatile int traceSource;
 
     public DefaultAcceptor() {
         this(NAME_PREFIX + SEQUENCE.getAndIncrement());
     }
 
     public DefaultAcceptor(String name) {
+        this(name, DEFAULT_STRIPES);
+    }
+
+    public DefaultAcceptor(String name, int stripes) {
+        this(name, stripes, new HeapVarStore(), null);
+    }
+
+    /**
+     * A durable acceptor, the state is recovered from the log first
+     */
+    public DefaultAcceptor(String name, AcceptorLog log) {
+        this(name, DEFAULT_STRIPES, new HeapVarStore(), log);
+    }
+
+    /**
+     * An acceptor starting from whatever the store already holds, the log is optional
+     */
+    public DefaultAcceptor(String name, VarStore store, AcceptorLog log) {
+        this(name, DEFAULT_STRIPES, store, log);
+    }
+
+    private DefaultAcceptor(String name, int stripes, VarStore store, AcceptorLog log) {
         this.name = name;
+        this.stripes = new ReentrantLock[stripesFor(stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.store = store;
+        this.leaderEpoch = store.leaderEpoch();
+        this.maxEpoch.set(leaderEpoch);
+        store.forEach((var, promisedEpoch, acceptedEpoch) -> maxEpoch.accumulateAndGet(promisedEpoch, Math::max));
+        this.log = log;
+        setMetrics(new DefaultMetrics());
+        setTracer(Tracer.DEFAULT);
+        if (log != null) {
+            recover(log);
+        }
+    }
+
+    private void recover(AcceptorLog log) {
+        final VarStore.State state = new VarStore.State();
+        try {
+            log.replay(new AcceptorLog.Replayer() {
+
+                @Override
+                public void onPromise(Object var, long epoch) {
+                    if (!store.read(var, state) || epoch > state.promisedEpoch) {
+                        store.promise(var, epoch);
+                    }
+                    maxEpoch.accumulateAndGet(epoch, Math::max);
+                }
+
+                @Override
+                public void onAccept(Object var, long epoch, Object value) {
+                    onPromise(var, epoch);
+                    store.read(var, state);
+                    // a fuzzy snapshot may already hold a later accept than the records replayed after it
+                    if (epoch >= state.acceptedEpoch) {
+                        store.accept(var, epoch, value);
+                    }
+                }
+
+                @Override
+                public void onLeader(long epoch) {
+                    if (epoch > leaderEpoch) {
+                        leaderEpoch = epoch;
+                        store.leader(epoch);
+                    }
+                    maxEpoch.accumulateAndGet(epoch, Math::max);
+                }
+            });
+        } catch (IOException e) {
+            throw new PaxosException("fail to recover acceptor " + name + " from " + log.getDir(), e);
+        }
+        LOG.info("acceptor [{}] recovered [{}] vars, leaderEpoch [{}], maxEpoch [{}]", name, store.size(),
+                leaderEpoch, maxEpoch.get());
     }
 
     @Override
-    public synchronized Promise prepare(Long epoch, Object var) {
-        MDC.put(MDCs.MDC_NAME, this.name);
-        LOG.info("receive prepare, epoch [{}], var [{}]", epoch, var);
-        Long preEpoch = lastestEpoches.get(var);
-
-        if (preEpoch == null) {
-            LOG.info("ACK prepare for var [{}],epoch [{}],  no preEpoch", var, epoch);
-            lastestEpoches.put(var, epoch);
+    public Promise prepare(Long epoch, Object var) {
+        ReentrantLock lock = lockFor(var);
+        Promise promise;
+        long sequence;
+        lock(lock);
+        try {
+            promise = prepareLocked(epoch, var);
+            sequence = appendedSequence();
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+        return promise;
+    }
+
+    private Promise prepareLocked(long epoch, Object var) {
+        VarStore.State state = new VarStore.State();
+        boolean known = store.read(var, state);
+        long leaderEpoch = this.leaderEpoch;
+        // a leader epoch greater than ours, or the lease of the leader, refuses the epoch
+        if (leaderEpoch > epoch || isLeasedAgainst(epoch, leaderEpoch)) {
+            tracer.record(Tracer.Event.PREPARE_NAK, traceSource, epoch, leaderEpoch, var);
+            return Promise.create(leaderEpoch, var, state.value, true);
+        }
+
+        if (!known) {
+            tracer.record(Tracer.Event.PREPARE_ACK, traceSource, epoch, NO_EPOCH, var);
+            promise(var, epoch);
             return Promise.create(null, var, null);
         }
 
-        Object oldValue = values.get(var);
+        long preEpoch = state.promisedEpoch;
         if (preEpoch > epoch) {
-            LOG.info("NAK prepare fro var [{}], preEpoch [{}] is greater than epoch [{}]", var, preEpoch, epoch);
-            return Promise.create(preEpoch, var, oldValue, true);
+            tracer.record(Tracer.Event.PREPARE_NAK, traceSource, epoch, preEpoch, var);
+            return Promise.create(preEpoch, var, state.value, true);
+        }
+
+        tracer.record(Tracer.Event.PREPARE_ACK, traceSource, epoch, preEpoch, var);
+        promise(var, epoch);
+        return Promise.createAccepted(preEpoch, var, state.value, state.acceptedEpoch);
+    }
+
+    @Override
+    public Promise prepareAll(Long epoch) {
+        Promise promise;
+        long sequence;
+        lockAll();
+        try {
+            promise = prepareAllLocked(epoch);
+            sequence = appendedSequence();
+        } finally {
+            unlockAll();
+        }
+        awaitDurable(sequence);
+        return promise;
+    }
+
+    private Promise prepareAllLocked(long epoch) {
+        long leaderEpoch = this.leaderEpoch;
+        // the leader promised every var its epoch already, asking again only renews its lease
+        if (epoch != leaderEpoch) {
+            long maxEpoch = this.maxEpoch.get();
+            if (maxEpoch > epoch) {
+                tracer.record(Tracer.Event.PREPARE_ALL_NAK, traceSource, epoch, maxEpoch, null);
+                return Promise.create(maxEpoch, null, null, true);
+            }
+            if (isLeasedAgainst(epoch, leaderEpoch)) {
+                tracer.record(Tracer.Event.PREPARE_ALL_NAK, traceSource, epoch, leaderEpoch, null);
+                return Promise.create(leaderEpoch, null, null, true);
+            }
         }
 
-        LOG.info("ACK accept for var [{}], epoch [{}], preEpoch [{}]", var, epoch, preEpoch);
-        lastestEpoches.put(var, epoch);
-        return Promise.create(preEpoch, var, oldValue);
+        tracer.record(Tracer.Event.PREPARE_ALL_ACK, traceSource, epoch, leaderEpoch, null);
+        if (leaseNanos > 0) {
+            this.leaseExpiresNanos = clock.nanoTime() + leaseNanos;
+        }
+        if (epoch != leaderEpoch) {
+            this.leaderEpoch = epoch;
+            this.maxEpoch.accumulateAndGet(epoch, Math::max);
+            store.leader(epoch);
+            if (log != null) {
+                log.appendLeader(epoch);
+            }
+        }
+        List<Object> acceptedVars = new ArrayList<>();
+        store.forEach((var, promisedEpoch, acceptedEpoch) -> {
+            if (acceptedEpoch != NO_EPOCH) {
+                acceptedVars.add(var);
+            }
+        });
+        return Promise.createForAll(leaderEpoch, acceptedVars);
     }
 
     @Override
-    public synchronized Accepted accept(Long epoch, Object var, Object value) {
-        MDC.put(MDCs.MDC_NAME, this.name);
-        LOG.info("receive accept, epoch [{}], var [{}], value [{}]", epoch, var, value);
-        Long preEpoch = lastestEpoches.get(var);
-        if (preEpoch == null) {
-            String msg = "I(the Acceptor) need an epoch before I can accept";
-            LOG.error(msg);
-            throw new IllegalStateException(msg);
+    public Accepted accept(Long epoch, Object var, Object value) {
+        ReentrantLock lock = lockFor(var);
+        Accepted accepted;
+        long sequence;
+        lock(lock);
+        try {
+            accepted = acceptLocked(epoch, var, value);
+            sequence = appendedSequence();
+        } finally {
+            lock.unlock();
         }
+        awaitDurable(sequence);
+        return accepted;
+    }
 
-        Object oldValue = values.get(var);
+    private Accepted acceptLocked(long epoch, Object var, Object value) {
+        VarStore.State state = new VarStore.State();
+        boolean known = store.read(var, state);
+        Object oldValue = state.value;
+        long leaderEpoch = this.leaderEpoch;
+        if (leaderEpoch > epoch || isLeasedAgainst(epoch, leaderEpoch)) {
+            tracer.record(Tracer.Event.ACCEPT_NAK, traceSource, epoch, leaderEpoch, var);
+            return Accepted.create(leaderEpoch, var, oldValue, true);
+        }
+
+        if (!known) {
+            // the proposer moves on once a quorum promised, so our prepare may come after the accept or never
+            promise(var, epoch);
+            state.promisedEpoch = epoch;
+        }
+
+        long preEpoch = state.promisedEpoch;
         if (preEpoch > epoch) {
-            LOG.info(
-                    "NAK accept for var [{}], preEpoch is greater! current : (epoch [{}],value [{}]), pre (repEpoch [{}], preValue [{}] )",
-                    var, epoch, value, preEpoch, oldValue);
+            tracer.record(Tracer.Event.ACCEPT_NAK, traceSource, epoch, preEpoch, var);
             return Accepted.create(preEpoch, var, oldValue, true);
         }
 
-        LOG.info("ACK accept for var [{}], current : (epoch [{}],value [{}]), pre (repEpoch [{}], preValue [{}] )", var,
-                epoch, value, preEpoch, oldValue);
-        values.put(var, value);
+        tracer.record(Tracer.Event.ACCEPT_ACK, traceSource, epoch, preEpoch, var);
+        acceptValue(state, var, epoch, value);
+        return Accepted.create(epoch, var, value);
+    }
+
+    @Override
+    public Accepted acceptWithoutPrepare(Long epoch, Object var, Object value) {
+        ReentrantLock lock = lockFor(var);
+        Accepted accepted;
+        long sequence;
+        lock(lock);
+        try {
+            accepted = acceptWithoutPrepareLocked(epoch, var, value);
+            sequence = appendedSequence();
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(sequence);
+        return accepted;
+    }
+
+    private Accepted acceptWithoutPrepareLocked(long epoch, Object var, Object value) {
+        VarStore.State state = new VarStore.State();
+        store.read(var, state);
+        Object oldValue = state.value;
+        long leaderEpoch = this.leaderEpoch;
+        long promisedEpoch = Math.max(state.promisedEpoch, leaderEpoch);
+        if (promisedEpoch > epoch) {
+            tracer.record(Tracer.Event.ACCEPT_WITHOUT_PREPARE_NAK, traceSource, epoch, promisedEpoch, var);
+            return Accepted.create(promisedEpoch, var, oldValue, true);
+        }
+
+        // the epoch is not greater than what we promised, but the proposer still has to run phase 1 for this var
+        if (leaderEpoch != epoch || oldValue != null) {
+            tracer.record(Tracer.Event.ACCEPT_WITHOUT_PREPARE_NAK, traceSource, epoch, promisedEpoch, var);
+            return Accepted.create(epoch, var, oldValue, true);
+        }
+
+        tracer.record(Tracer.Event.ACCEPT_WITHOUT_PREPARE_ACK, traceSource, epoch, NO_EPOCH, var);
+        acceptValue(state, var, epoch, value);
         return Accepted.create(epoch, var, value);
+    }
+
+    /**
+     * Handles every request under the lock of its var, one after the other, then waits once for the log to be
+     * durable up to the last of them
+     */
+    @Override
+    public List<NAKAble> handle(List<AcceptorRequest> requests) {
+        List<NAKAble> responses = new ArrayList<>(requests.size());
+        long sequence = 0L;
+        for (AcceptorRequest request : requests) {
+            if (request.getType() == AcceptorRequest.Type.PREPARE_ALL) {
+                lockAll();
+                try {
+                    responses.add(prepareAllLocked(request.getEpoch()));
+                    sequence = appendedSequence();
+                } finally {
+                    unlockAll();
+                }
+                continue;
+            }
+
+            ReentrantLock lock = lockFor(request.getVar());
+            lock(lock);
+            try {
+                switch (request.getType()) {
+                    case PREPARE:
+                        responses.add(prepareLocked(request.getEpoch(), request.getVar()));
+                        break;
+                    case ACCEPT:
+                        responses.add(acceptLocked(request.getEpoch(), request.getVar(), request.getValue()));
+                        break;
+                    default:
+                        responses.add(acceptWithoutPrepareLocked(request.getEpoch(), request.getVar(),
+                                request.getValue()));
+                }
+                sequence = appendedSequence();
+            } finally {
+                lock.unlock();
+            }
+        }
+        awaitDurable(sequence);
+        return responses;
+    }
+
+    /**
+     * The record goes to the log before the store changes, so a var or value the log can not encode leaves nothing
+     * behind that a restart would forget
+     */
+    private void promise(Object var, long epoch) {
+        if (log != null) {
+            log.appendPromise(var, epoch);
+        }
+        store.promise(var, epoch);
+        maxEpoch.accumulateAndGet(epoch, Math::max);
+    }
+
+    /**
+     * An accept also promises its epoch
+     */
+    private void acceptValue(VarStore.State state, Object var, long epoch, Object value) {
+        if (log != null) {
+            log.appendAccept(var, epoch, value);
+        }
+        if (epoch > state.promisedEpoch) {
+            store.promise(var, epoch);
+        }
+        maxEpoch.accumulateAndGet(epoch, Math::max);
+        store.accept(var, epoch, value);
+    }
+
+    private long appendedSequence() {
+        return log == null ? 0L : log.lastSequence();
+    }
+
+    private void awaitDurable(long sequence) {
+        if (log != null) {
+            long start = clock.nanoTime();
+            log.awaitDurable(sequence);
+            durableWait.record(clock.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes a snapshot of every var to the log and drops the segments before it
+     */
+    public synchronized void snapshot() throws IOException {
+        if (log == null) {
+            throw new IllegalStateException("acceptor " + name + " has no log to snapshot");
+        }
+        long sequence = log.roll();
+        log.snapshot(sequence, leaderEpoch, writer -> {
+            VarStore.State state = new VarStore.State();
+            try {
+                store.forEach((var, promisedEpoch, acceptedEpoch) -> {
+                    ReentrantLock lock = lockFor(var);
+                    lock(lock);
+                    try {
+                        store.read(var, state);
+                    } finally {
+                        lock.unlock();
+                    }
+                    try {
+                        writer.write(var, state.promisedEpoch, state.acceptedEpoch, state.value);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        });
+    }
+
+    /**
+     * Takes a snapshot in the background every period until the acceptor is closed
+     */
+    public synchronized void scheduleSnapshots(long period, TimeUnit unit) {
+        if (snapshotter != null) {
+            throw new IllegalStateException("snapshots of acceptor " + name + " were already scheduled");
+        }
+        snapshotter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "acceptor_snapshot_" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshotter.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot();
+            } catch (Exception e) {
+                LOG.error("fail to snapshot acceptor " + name, e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * Closes the log of a durable acceptor and the store
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (snapshotter != null) {
+                snapshotter.shutdownNow();
+            }
+        }
+        if (log != null) {
+            log.close();
+        }
+        store.close();
+    }
+
+    /**
+     * Whether the lease of the leader still refuses the epoch, the leader's own greater epochs always pass
+     */
+    private boolean isLeasedAgainst(long epoch, long leaderEpoch) {
+        if (leaseNanos <= 0 || leaderEpoch == NO_EPOCH || epoch <= leaderEpoch) {
+            return false;
+        }
+        if (epoch % proposerNum == leaderEpoch % proposerNum) {
+            return false;
+        }
+        return clock.nanoTime() - leaseExpiresNanos < 0;
+    }
+
+    /**
+     * Grants leases of the given duration to the leader. Proposers are told apart by epoch % proposerNum, as
+     * {@link DefaultProposer} makes its epochs. A lease is not kept across a restart, so a restarted acceptor which
+     * knew a leader treats it as leased for a whole duration
+     */
+    public void setLease(long duration, TimeUnit unit, int proposerNum) {
+        if (proposerNum <= 0) {
+            throw new IllegalArgumentException("proposerNum should be positive, but is " + proposerNum);
+        }
+        this.proposerNum = proposerNum;
+        this.leaseExpiresNanos = clock.nanoTime() + unit.toNanos(duration);
+        this.leaseNanos = unit.toNanos(duration);
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Where the acceptor records, under its name: how long calls waited for a stripe lock held by another call, and
+     * how long they waited for the log to be durable
+     */
+    public void setMetrics(Metrics metrics) {
+        this.lockWait = metrics.histogram(name + ".lock.wait");
+        this.durableWait = metrics.histogram(name + ".durable.wait");
+        this.metrics = metrics;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Where the acceptor records every prepare and accept and how it answered, see {@link Tracer}
+     */
+    public void setTracer(Tracer tracer) {
+        this.traceSource = tracer.source(name);
+        this.tracer = tracer;
+    }
+
+    /**
+     * Takes the lock, timing the wait only when it is held by someone else
+     */
+    private void lock(ReentrantLock lock) {
+        if (lock.tryLock()) {
+            return;
+        }
+        long start = clock.nanoTime();
+        lock.lock();
+        lockWait.record(clock.nanoTime() - start);
+    }
+
+    private void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            lock(stripe);
+        }
+    }
 
+    private void unlockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.unlock();
+        }
+    }
+
+    private ReentrantLock lockFor(Object var) {
+        int h = var.hashCode();
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+
+    private static int stripesFor(int stripes) {
+        int n = 1;
+        while (n < stripes) {
+            n <<= 1;
+        }
+        return n;
     }
 }
@@ -0,0 +1,71 @@
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the value chosen for every var it learned, so reading a decided var never goes to the acceptors. A chosen
+ * value never changes, so whatever is cached is the right answer, a var not learned yet reads as null. With a maximum
+ * size, learning a var beyond it forgets some other var, which then reads as not learned
+ */
+public class DefaultLearner implements Learner {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultLearner.class);
+
+    private final Map<Object, Object> decided = new ConcurrentHashMap<>();
+    private final int                 maxSize;
+
+    public DefaultLearner() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxSize the vars remembered at most
+     */
+    public DefaultLearner(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize should be positive, but is " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public void learn(Object var, Object value) {
+        if (value == null) {
+            return;
+        }
+        Object previous = decided.putIfAbsent(var, value);
+        if (previous != null && !previous.equals(value)) {
+            LOG.error("learned value [{}] for var [{}], but [{}] was chosen before", value, var, previous);
+        }
+        if (previous == null && decided.size() > maxSize) {
+            forgetOthers(var);
+        }
+    }
+
+    private void forgetOthers(Object var) {
+        Iterator<Object> vars = decided.keySet().iterator();
+        while (decided.size() > maxSize && vars.hasNext()) {
+            if (!vars.next().equals(var)) {
+                vars.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the value chosen for the var, null if it was not learned yet or was forgotten
+     */
+    public Object read(Object var) {
+        return decided.get(var);
+    }
+
+    public boolean isDecided(Object var) {
+        return decided.containsKey(var);
+    }
+
+    public int size() {
+        return decided.size();
+    }
+}
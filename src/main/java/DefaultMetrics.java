@@ -0,0 +1,173 @@
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The in-process {@link Metrics}: counters are {@link LongAdder}s and histograms keep counts in log-linear buckets
+ * like HdrHistogram, 32 linear buckets for every power of two, so a percentile is off by at most about 3% and
+ * recording is a couple of atomic adds
+ */
+public class DefaultMetrics implements Metrics {
+
+    private final Map<String, DefaultCounter>   counters   = new ConcurrentHashMap<>();
+    private final Map<String, DefaultHistogram> histograms = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier>     gauges     = new ConcurrentHashMap<>();
+
+    @Override
+    public DefaultCounter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new DefaultCounter());
+    }
+
+    @Override
+    public DefaultHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new DefaultHistogram());
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * @return the count, 0 for a counter never used
+     */
+    public long getCount(String name) {
+        DefaultCounter counter = counters.get(name);
+        return counter == null ? 0L : counter.get();
+    }
+
+    /**
+     * @return null for a histogram never used
+     */
+    public DefaultHistogram getHistogram(String name) {
+        return histograms.get(name);
+    }
+
+    /**
+     * @return the value now, 0 for an unknown gauge
+     */
+    public long getGauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? 0L : gauge.getAsLong();
+    }
+
+    /**
+     * @return every metric by name, histograms summed up as count, mean, p50, p99 and max
+     */
+    public SortedMap<String, String> snapshot() {
+        SortedMap<String, String> snapshot = new TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, Long.toString(counter.get())));
+        gauges.forEach((name, gauge) -> snapshot.put(name, Long.toString(gauge.getAsLong())));
+        histograms.forEach((name, histogram) -> snapshot.put(name, histogram.toString()));
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        snapshot().forEach((name, value) -> builder.append(name).append(' ').append(value).append('\n'));
+        return builder.toString();
+    }
+
+    public static class DefaultCounter implements Counter {
+
+        private final LongAdder count = new LongAdder();
+
+        @Override
+        public void add(long n) {
+            count.add(n);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    public static class DefaultHistogram implements Histogram {
+
+        private static final int SUB_BUCKET_BITS = 5;
+        private static final int SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS);
+        private final LongAdder       count   = new LongAdder();
+        private final LongAdder       sum     = new LongAdder();
+        private final AtomicLong      max     = new AtomicLong();
+
+        @Override
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(indexOf(value));
+            count.increment();
+            sum.add(value);
+            // a plain read first, the max rarely moves
+            if (value > max.get()) {
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public double getMean() {
+            long count = this.count.sum();
+            return count == 0 ? 0 : (double) sum.sum() / count;
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @param percentile in (0, 100]
+         * @return the greatest value of the bucket holding the percentile, 0 when nothing was recorded
+         */
+        public long getValueAtPercentile(double percentile) {
+            long count = this.count.sum();
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return Math.min(highestOf(i), max.get());
+                }
+            }
+            return max.get();
+        }
+
+        static int indexOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        static long highestOf(int index) {
+            int bucket = index >>> SUB_BUCKET_BITS;
+            long subBucket = index & (SUB_BUCKETS - 1);
+            if (bucket == 0) {
+                return subBucket;
+            }
+            long lowest = (SUB_BUCKETS + subBucket) << (bucket - 1);
+            return lowest + (1L << (bucket - 1)) - 1;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1f p50=%d p99=%d max=%d", getCount(), getMean(),
+                    getValueAtPercentile(50), getValueAtPercentile(99), getMax());
+        }
+    }
+}
@@ -1,240 +1,792 @@
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.CompletionService;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.slf4j.MDC;
 import util.Asserts;
-import util.Counter;
-import util.MDCs;
+import util.Clock;
+import util.Scheduler;
 
-public class DefaultProposer implements Proposer {
+public class DefaultProposer implements Proposer, AsyncProposer {
 
     private static final Logger LOG = LoggerFactory.getLogger(DefaultProposer.class);
     private static final String NAME_PREFIX = "proposer_";
+    private static final Leadership NOT_LEADER = new Leadership(-1L, null);
+    // fires phase timeouts and delayed rounds, shared by every proposer
+    private static final ScheduledThreadPoolExecutor TIMER = createTimer();
+    private static final int DEFAULT_MAX_PENDING_PROPOSALS = 1 << 16;
+    // chosen values kept for reads under leases, a var forgotten takes a round again
+    private static final int MAX_DECIDED = 1 << 16;
+    private static final int EPOCH_STRIPES = 64;
+    // longs from one stripe to the next, a cache line
+    private static final int EPOCH_PADDING = 8;
+    private static final int LEADER_SLOT = EPOCH_STRIPES * EPOCH_PADDING;
 
-    private long sleepTimeWhenNeedNextRound = TimeUnit.NANOSECONDS.convert(10, TimeUnit.MILLISECONDS);
-    private AtomicLong lastEpoch = new AtomicLong(-1L);
+    private volatile RetryPolicy retryPolicy = new ExponentialBackoff(1, 100, TimeUnit.MILLISECONDS, 100);
+    private volatile long proposalTimeoutNanos = TimeUnit.NANOSECONDS.convert(30, TimeUnit.SECONDS);
+    // the proposers by id, when lost proposals are forwarded
+    private volatile List<? extends AsyncProposer> peers;
+    // the proposal in flight for each var, later ones of the var join it
+    private final Map<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingProposals = new AtomicInteger();
+    private volatile int maxPendingProposals = DEFAULT_MAX_PENDING_PROPOSALS;
+    private volatile long phaseTimeoutNanos = TimeUnit.NANOSECONDS.convert(5, TimeUnit.SECONDS);
+    // the last epoch of each stripe of vars and, in the last slot, of our elections, padded apart so that stripes do
+    // not share a cache line
+    private final AtomicLongArray lastEpochs = createLastEpochs();
     private String name;
-    private Set<Acceptor> acceptors = new HashSet<>();
-    private int majorityAcceptorNum;
-    private Long proposerId;
-    private Integer proposerNum;
-    private ThreadPoolExecutor executor;
+    private List<AsyncAcceptor> acceptors;
+    private volatile QuorumSystem quorums;
+    private long proposerId;
+    private int proposerNum;
+    private ExecutorService executor;
+    private volatile boolean multiPaxos = false;
+    // the epoch we won phase 1 for every var with, NOT_LEADER when we are not the leader
+    private AtomicReference<Leadership> leadership = new AtomicReference<>(NOT_LEADER);
+    private AtomicReference<CompletableFuture<Leadership>> election = new AtomicReference<>();
+    private final List<Learner> learners = new CopyOnWriteArrayList<>();
+    private volatile Executor learnerExecutor = ForkJoinPool.commonPool();
+    private volatile Clock clock = Clock.SYSTEM;
+    private volatile Scheduler scheduler = TIMER::schedule;
+    private volatile long leaseNanos = 0L;
+    private volatile long leaseDriftNanos = 0L;
+    // the values we know were chosen, only kept with leases
+    private final DefaultLearner decided = new DefaultLearner(MAX_DECIDED);
+    private volatile Metrics metrics;
+    private volatile Recorder recorder;
+    private volatile Tracer tracer;
+    private volatile int traceSource;
 
+    /**
+     * Blocking acceptors are called on a pool of the given threads, acceptors which are also {@link AsyncAcceptor}s
+     * are called directly
+     */
     public DefaultProposer(Set<Acceptor> acceptors, long proposerId, int proposerNum, int threads) {
+        this(acceptors, proposerId, proposerNum, AcceptorExecutors.pooled(threads));
+    }
+
+    /**
+     * Blocking acceptors are called on the executor, see {@link AcceptorExecutors}, which is shut down when the
+     * proposer stops. Acceptors which are also {@link AsyncAcceptor}s are called directly
+     */
+    public DefaultProposer(Set<Acceptor> acceptors, long proposerId, int proposerNum, ExecutorService executor) {
+        this(proposerId, proposerNum, acceptors.size());
+        this.executor = executor;
+        for (Acceptor acceptor : acceptors) {
+            this.acceptors.add(toAsync(acceptor, this.executor));
+        }
+        setMetrics(new DefaultMetrics());
+    }
+
+    public DefaultProposer(List<? extends AsyncAcceptor> acceptors, long proposerId, int proposerNum) {
+        this(proposerId, proposerNum, acceptors.size());
+        this.acceptors.addAll(acceptors);
+        setMetrics(new DefaultMetrics());
+    }
+
+    private DefaultProposer(long proposerId, int proposerNum, int acceptorNum) {
         this.name = NAME_PREFIX + proposerId;
-        this.acceptors = acceptors;
-        this.majorityAcceptorNum = acceptors.size() / 2 + 1;
+        this.acceptors = new ArrayList<>(acceptorNum);
+        this.quorums = WeightedQuorums.majority(acceptorNum);
         this.proposerId = proposerId;
         this.proposerNum = proposerNum;
-        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.SECONDS,
-                new ArrayBlockingQueue<Runnable>(threads), new CallerRunsPolicy());
+        setTracer(Tracer.DEFAULT);
+    }
+
+    private static AsyncAcceptor toAsync(Acceptor acceptor, Executor executor) {
+        if (acceptor instanceof AsyncAcceptor) {
+            return (AsyncAcceptor) acceptor;
+        }
+        return new AsyncAcceptorAdapter(acceptor, executor);
     }
 
     @Override
     public Object propose(final Object var, final Object value) {
-        final Long epoch = generateEpoch(0L, var);
-        return proposeWithEpoch(epoch, var, value);
+        return BlockingAcceptorAdapter.await(proposeAsync(var, value));
     }
 
-    public Object proposeWithEpoch(final Long epoch, final Object var, final Object value) {
-        MDC.put(MDCs.MDC_NAME, this.name);
-        LOG.info("start to send prepare (epoch[{}], var [{}], value [{}])", epoch, var, value);
-        //phase 1
-        List<Promise> promises = concurrentPrepare(var, epoch);
-        if (promises.size() < this.majorityAcceptorNum) {
-            LOG.info("receive promises num [{}] , less then majorityAcceptorNum [{}], try to propose again",
-                    promises.size(), this.majorityAcceptorNum);
-            proposeWithEpoch(epoch, var, value);
-        }
-
-        int nakPromisesNum = 0;
-        Long maxEpoch = epoch;
-        int firstPromises = 0;
-        int maybeHasValuePromises = 0;
-
-        Counter<Object> values = new Counter<>();
-        for (Promise promise : promises) {
-            if (promise.isNAK()) {
-                nakPromisesNum++;
-                maxEpoch = maxEpoch > promise.getPreEpoch() ? maxEpoch : promise.getPreEpoch();
-                continue;
+    /**
+     * Proposals of a var made while one for it is in flight here, forwarded ones included, join it instead of
+     * contending with it: the value it chooses is the answer to all of them. Beyond the pending proposals admitted,
+     * a proposal fails at once with an {@link OverloadException}
+     */
+    @Override
+    public CompletableFuture<Object> proposeAsync(final Object var, final Object value) {
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = this.inFlight.putIfAbsent(var, mine);
+        if (running != null) {
+            // a caller cancelling its future must not cancel it for the others
+            return running.copy();
+        }
+        int pending = this.pendingProposals.incrementAndGet();
+        if (pending > this.maxPendingProposals) {
+            this.pendingProposals.decrementAndGet();
+            this.inFlight.remove(var, mine);
+            this.recorder.rejected.increment();
+            mine.completeExceptionally(new OverloadException(this.name + " has " + (pending - 1)
+                    + " proposals pending, at most " + this.maxPendingProposals + " are admitted"));
+            return mine;
+        }
+
+        CompletableFuture<Object> chosen = this.multiPaxos ? proposeAsLeaderAsync(var, value)
+                : onChosen(var, proposeWithEpochAsync(generateEpoch(0L, var), var, value));
+        chosen.whenComplete((result, e) -> {
+            this.inFlight.remove(var, mine);
+            this.pendingProposals.decrementAndGet();
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(result);
             }
-            if (promise.getPreEpoch() == null) {
-                firstPromises++;
-                continue;
+        });
+        return mine.copy();
+    }
+
+    public Object proposeAsLeader(final Object var, final Object value) {
+        return BlockingAcceptorAdapter.await(proposeAsLeaderAsync(var, value));
+    }
+
+    /**
+     * Multi-Paxos: once we won phase 1 for every var, send only accept for a var until another proposer preempts us
+     */
+    public CompletableFuture<Object> proposeAsLeaderAsync(final Object var, final Object value) {
+        Leadership current = this.leadership.get();
+        if (current != NOT_LEADER) {
+            renewLeaseIfDue(current);
+            return onChosen(var, acceptAsLeaderAsync(current, var, value));
+        }
+        return onChosen(var, electLeaderAsync(var).thenCompose(elected -> {
+            if (elected == NOT_LEADER) {
+                return proposeWithEpochAsync(generateEpoch(0L, var), var, value);
             }
-            if (promise.getPreEpoch() <= epoch) {
-                maybeHasValuePromises++;
-                values.add(promise.getValue());
-                continue;
+            return acceptAsLeaderAsync(elected, var, value);
+        }));
+    }
+
+    /**
+     * Linearizable read, see {@link #readAsync(Object)}
+     */
+    public Object read(final Object var) {
+        return BlockingAcceptorAdapter.await(readAsync(var));
+    }
+
+    /**
+     * Linearizable read. With leases, a value we know was chosen is answered at once since it never changes, and a
+     * leader holding its lease answers on its own that nothing is chosen for a var no acceptor held a value for, since
+     * no one else can choose anything until the lease runs out. Everything else takes a round proposing nothing,
+     * which completes the value some acceptor holds or finds there is none
+     *
+     * @return the chosen value, null when there is none
+     */
+    @Override
+    public CompletableFuture<Object> readAsync(final Object var) {
+        Object known = this.decided.read(var);
+        if (known != null) {
+            return CompletableFuture.completedFuture(known);
+        }
+        Leadership current = this.leadership.get();
+        if (current != NOT_LEADER) {
+            if (hasLease(current) && !current.preparedVars.contains(var)) {
+                renewLeaseIfDue(current);
+                return CompletableFuture.completedFuture(null);
             }
+            // the round promises the var a greater epoch, so it can not skip phase 1 any more
+            current.preparedVars.add(var);
+            renewLeaseIfDue(current);
+        }
+        return onChosen(var, proposeWithEpochAsync(generateEpoch(0L, var), var, null));
+    }
+
+    private boolean hasLease(Leadership current) {
+        return this.leaseNanos > 0 && this.clock.nanoTime() - current.leaseExpiresNanos < 0;
+    }
 
-            Asserts.unreachable();
+    /**
+     * Sends prepareAll with the leader epoch again once half of the lease is gone, the lease is extended from the
+     * time it was sent
+     */
+    private void renewLeaseIfDue(final Leadership current) {
+        final long leaseNanos = this.leaseNanos;
+        if (leaseNanos <= 0) {
+            return;
         }
+        final long now = this.clock.nanoTime();
+        if (current.leaseExpiresNanos - now > leaseNanos / 2 || !current.renewing.compareAndSet(false, true)) {
+            return;
+        }
+        concurrentPrepareAllAsync(current.epoch).whenComplete((promises, e) -> {
+            current.renewing.set(false);
+            if (e != null) {
+                LOG.info("fail to renew the lease of leaderEpoch [{}], {}", current.epoch, e.getMessage());
+                return;
+            }
+            int ackPromisesNum = 0;
+            for (Promise promise : promises) {
+                if (!promise.isNAK()) {
+                    ackPromisesNum++;
+                    // values may have been accepted while the lease had run out
+                    current.preparedVars.addAll(promise.getAcceptedVars());
+                }
+            }
+            if (promises.isQuorum()) {
+                current.leaseExpiresNanos = now + leaseNanos - this.leaseDriftNanos;
+            } else {
+                LOG.info("lost the lease of leaderEpoch [{}], ackPromisesNum [{}]", current.epoch, ackPromisesNum);
+                this.tracer.record(Tracer.Event.LEADER_LOST, this.traceSource, current.epoch, VarStore.NO_EPOCH,
+                        null);
+                this.leadership.compareAndSet(current, NOT_LEADER);
+            }
+        });
+    }
 
-        LOG.info(
-                "prepare (epoch [{}], var [{}], value [{}]) status  : nakPromisesNum [{}], maxEpoch [{}], firstPromises [{}], maybeHasValuePromises [{}], this.majorityAcceptorNum [{}]",
-                epoch, var, value, nakPromisesNum, maxEpoch, firstPromises, maybeHasValuePromises,
-                this.majorityAcceptorNum);
-        if (nakPromisesNum >= this.majorityAcceptorNum) {
-            LOG.info(
-                    "prepare fail for var [{}], value [{}], nakPromisesNum [{}] is greater then majorityAcceptorNum [{}], the max preEpoch is [{}]",
-                    var, value, nakPromisesNum, majorityAcceptorNum, maxEpoch);
-            return nextRound(maxEpoch, var, value);
+    /**
+     * Remembers the chosen value when there are leases, and hands it to every learner on the learner executor, the
+     * proposal does not wait for them
+     */
+    private CompletableFuture<Object> onChosen(final Object var, final CompletableFuture<Object> chosen) {
+        if (this.learners.isEmpty() && this.leaseNanos <= 0) {
+            return chosen;
         }
+        return chosen.thenApply(value -> {
+            if (value == null) {
+                return null;
+            }
+            if (this.leaseNanos > 0) {
+                this.decided.learn(var, value);
+            }
+            for (Learner learner : this.learners) {
+                this.learnerExecutor.execute(() -> {
+                    try {
+                        learner.learn(var, value);
+                    } catch (Exception e) {
+                        LOG.error("learner failed to learn var " + var, e);
+                    }
+                });
+            }
+            return value;
+        });
+    }
 
-        // prepare success, and we can continue phase 2
-        if (firstPromises >= this.majorityAcceptorNum) {
-            LOG.info(
-                    "prepare success for var [{}], value [{}], firstPromises [{}] is greater then majorityAcceptorNum [{}], try accept with epoch [{}]",
-                    var, value, firstPromises, this.majorityAcceptorNum, epoch);
-            return tryAccept(epoch, var, value);
+    protected CompletableFuture<Object> acceptAsLeaderAsync(final Leadership current, final Object var,
+                                                            final Object value) {
+        final long epoch = current.epoch;
+        if (!current.preparedVars.add(var)) {
+            // the var had a value when we won phase 1, or we already sent a value for it in this epoch, so it needs
+            // a full round in a new epoch, never a second value in the leader epoch
+            return proposeWithEpochAsync(generateEpoch(0L, var), var, value);
         }
 
-        if (maybeHasValuePromises >= this.majorityAcceptorNum
-                || (firstPromises + maybeHasValuePromises) >= this.majorityAcceptorNum) {
-            Object newValue = values.getMostItem();
-            if (newValue == null) {
-                newValue = value;
+        this.tracer.record(Tracer.Event.PROPOSE_LEADER_ACCEPT, this.traceSource, epoch, VarStore.NO_EPOCH, var);
+        return concurrentAcceptWithoutPrepareAsync(epoch, var, value).handle((accepteds, e) -> {
+            if (e != null) {
+                if (!isPhaseTimeout(e)) {
+                    return CompletableFuture.<Object> failedFuture(e);
+                }
+                // the accept may have been lost on the way to some acceptors, the var gets a full round
+                return proposeWithEpochAsync(generateEpoch(0L, var), var, value);
+            }
+            if (accepteds.isQuorum()) {
+                this.tracer.record(Tracer.Event.PROPOSE_CHOSEN, this.traceSource, epoch, 0L, var);
+                this.recorder.rounds.record(1);
+                return CompletableFuture.completedFuture(value);
             }
 
-            LOG.info("prepare success for var [{}], epoch [{}], we can try accept with new value [{}]", var, epoch,
-                    newValue);
-            return tryAccept(epoch, var, newValue);
+            long maxEpochWhenAccepted = epoch;
+            for (Accepted accepted : accepteds) {
+                if (accepted.isNAK()) {
+                    maxEpochWhenAccepted = Math.max(maxEpochWhenAccepted, accepted.getEpochAsLong());
+                }
+            }
+            if (maxEpochWhenAccepted > epoch) {
+                LOG.info("leaderEpoch [{}] was preempted by epoch [{}]", epoch, maxEpochWhenAccepted);
+                this.tracer.record(Tracer.Event.LEADER_LOST, this.traceSource, epoch, maxEpochWhenAccepted, var);
+                this.leadership.compareAndSet(current, NOT_LEADER);
+                return new Proposal(var, value).lose(maxEpochWhenAccepted);
+            }
+
+            // some acceptors missed our phase 1, so the var needs a full round
+            return proposeWithEpochAsync(generateEpoch(0L, var), var, value);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Concurrent callers share one running election
+     *
+     * @return the leadership, or NOT_LEADER when we lost
+     */
+    protected CompletableFuture<Leadership> electLeaderAsync(final Object var) {
+        Leadership current = this.leadership.get();
+        if (current != NOT_LEADER) {
+            return CompletableFuture.completedFuture(current);
+        }
+
+        CompletableFuture<Leadership> mine = new CompletableFuture<>();
+        CompletableFuture<Leadership> running = this.election.compareAndExchange(null, mine);
+        if (running != null) {
+            return running;
         }
 
-        return nextRound(maxEpoch, var, value);
+        final long newEpoch = generateEpoch(0L, null);
+        final long leaseStart = this.clock.nanoTime();
+        concurrentPrepareAllAsync(newEpoch).thenApply(promises -> {
+            int ackPromisesNum = 0;
+            long maxEpoch = newEpoch;
+            Set<Object> preparedVars = ConcurrentHashMap.newKeySet();
+            for (Promise promise : promises) {
+                if (promise.isNAK()) {
+                    maxEpoch = Math.max(maxEpoch, promise.getPreEpochAsLong());
+                    continue;
+                }
+                ackPromisesNum++;
+                preparedVars.addAll(promise.getAcceptedVars());
+            }
+
+            if (promises.isQuorum()) {
+                LOG.info("become leader with epoch [{}], ackPromisesNum [{}], vars with value [{}]", newEpoch,
+                        ackPromisesNum, preparedVars.size());
+                this.tracer.record(Tracer.Event.LEADER_ELECTED, this.traceSource, newEpoch, VarStore.NO_EPOCH, var);
+                Leadership elected = new Leadership(newEpoch, preparedVars);
+                elected.leaseExpiresNanos = leaseStart + this.leaseNanos - this.leaseDriftNanos;
+                this.leadership.set(elected);
+                return elected;
+            }
+
+            LOG.info("fail to become leader with epoch [{}], ackPromisesNum [{}], maxEpoch [{}]", newEpoch,
+                    ackPromisesNum, maxEpoch);
+            this.tracer.record(Tracer.Event.LEADER_LOST, this.traceSource, newEpoch, maxEpoch, var);
+            generateEpoch(maxEpoch, null);
+            return NOT_LEADER;
+        }).exceptionally(e -> {
+            if (isPhaseTimeout(e)) {
+                // not a quorum in time, proposals go on in full rounds
+                LOG.info("fail to become leader with epoch [{}], {}", newEpoch, e.getMessage());
+                return NOT_LEADER;
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        }).whenComplete((result, e) -> {
+            this.election.set(null);
+            if (e != null) {
+                mine.completeExceptionally(e);
+            } else {
+                mine.complete(result);
+            }
+        });
+        return mine;
+    }
 
+    public Object proposeWithEpoch(final Long epoch, final Object var, final Object value) {
+        return BlockingAcceptorAdapter.await(proposeWithEpochAsync(epoch, var, value));
     }
 
-    public Object tryAccept(final Long epoch, final Object var, final Object value) {
-        List<Accepted> accepteds = concurrentCommit(epoch, var, value);
-        if (accepteds.size() < this.majorityAcceptorNum) {
-            return proposeWithEpoch(epoch, var, value);
+    public CompletableFuture<Object> proposeWithEpochAsync(final Long epoch, final Object var, final Object value) {
+        return new Proposal(var, value).start(epoch);
+    }
+
+    /**
+     * @return what the round does after phase 1
+     */
+    protected Step onPromises(final long epoch, final Object var, final Object value, Responses<Promise> promises) {
+        if (!promises.isQuorum()) {
+            long maxEpoch = epoch;
+            for (Promise promise : promises) {
+                if (promise.isNAK()) {
+                    maxEpoch = Math.max(maxEpoch, promise.getPreEpochAsLong());
+                }
+            }
+            return Step.lost(maxEpoch);
         }
 
-        int nakAcceptedNum = 0;
-        int successAcceptedNum = 0;
-        Long maxEpochWhenAccepted = epoch;
-        Counter<Object> oldAcceptedValues = new Counter<>();
-        for (Accepted accepted : accepteds) {
-            if (accepted.isNAK()) {
-                nakAcceptedNum++;
-                maxEpochWhenAccepted = maxEpochWhenAccepted > accepted.getEpoch() ? maxEpochWhenAccepted
-                        : accepted.getEpoch();
-                oldAcceptedValues.add(accepted.getValue());
+        // the value accepted in the greatest epoch may have been chosen, so it is the only one we may propose. A
+        // chosen value was accepted by a phase 2 quorum, which shares an acceptor with the quorum which promised
+        Object acceptedValue = null;
+        long maxAcceptedEpoch = -1L;
+        for (Promise promise : promises) {
+            if (promise.isNAK()) {
                 continue;
             }
-
-            if (!accepted.isNAK()) {
-                successAcceptedNum++;
-                oldAcceptedValues.add(accepted.getValue());
+            long preEpoch = promise.getPreEpochAsLong();
+            if (preEpoch == VarStore.NO_EPOCH) {
                 continue;
             }
-            Asserts.unreachable();
+            if (preEpoch > epoch) {
+                Asserts.unreachable();
+            }
+            long acceptedEpoch = promise.getAcceptedEpochAsLong();
+            if (promise.getValue() != null && acceptedEpoch != VarStore.NO_EPOCH && acceptedEpoch > maxAcceptedEpoch) {
+                maxAcceptedEpoch = acceptedEpoch;
+                acceptedValue = promise.getValue();
+            }
         }
 
-        LOG.info(
-                "accept (epoch [{}], var [{}], value [{}]) status : nakAcceptedNum [{}], successAcceptedNum [{}], maxEpochWhenAccepted [{}], majorityAcceptorNum [{}]",
-                epoch, var, value, nakAcceptedNum, successAcceptedNum, maxEpochWhenAccepted, this.majorityAcceptorNum);
-
-        if (nakAcceptedNum >= this.majorityAcceptorNum) {
-            LOG.info("NAK accept, epoch [{}], var [{}], value[{}], the maxEpochWhenAccepted is [{}]", epoch, var, value,
-                    maxEpochWhenAccepted);
-            return nextRound(maxEpochWhenAccepted, var, value);
+        Object newValue = acceptedValue;
+        if (newValue == null) {
+            newValue = value;
         }
-
-        if (successAcceptedNum >= this.majorityAcceptorNum) {
-            LOG.info("ACK accept, epoch [{}], var [{}], value[{}]", epoch, var, value);
-            return oldAcceptedValues.getMostItem();
+        if (newValue == null) {
+            // a read, and nothing was chosen
+            return Step.chosen(null);
         }
+        return Step.accept(epoch, newValue);
+    }
 
-        return nextRound(maxEpochWhenAccepted, var, value);
+    public Object tryAccept(final Long epoch, final Object var, final Object value) {
+        return BlockingAcceptorAdapter.await(tryAcceptAsync(epoch, var, value));
     }
 
-    protected List<Promise> concurrentPrepare(final Object var, final Long epoch) {
-        CompletionService<Promise> completionService = new ExecutorCompletionService<>(this.executor);
-        for (final Acceptor acceptor : acceptors) {
-            completionService.submit(() -> acceptor.prepare(epoch, var));
+    public CompletableFuture<Object> tryAcceptAsync(final Long epoch, final Object var, final Object value) {
+        return new Proposal(var, value).accept(epoch, value);
+    }
+
+    /**
+     * @return what the round does after phase 2
+     */
+    protected Step onAccepteds(final long epoch, final Object var, final Object value, Responses<Accepted> accepteds) {
+        // every ACK holds the value we sent, NAKs may outnumber them when phase 2 quorums are small
+        if (accepteds.isQuorum()) {
+            return Step.chosen(value);
         }
 
-        List<Promise> promises = new ArrayList<>(acceptors.size());
-        for (int i = 0; i < acceptors.size(); i++) {
-            Future<Promise> future = null;
-            try {
-                future = completionService.take();
-                Promise promise = future.get();
-                promises.add(promise);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("propose (phase 1) was interrupted", e);
-            } catch (ExecutionException e) {
-                processExecutionExeception(e);
+        long maxEpochWhenAccepted = epoch;
+        for (Accepted accepted : accepteds) {
+            if (accepted.isNAK()) {
+                maxEpochWhenAccepted = Math.max(maxEpochWhenAccepted, accepted.getEpochAsLong());
             }
         }
-        return promises;
+        return Step.lost(maxEpochWhenAccepted);
+    }
+
+    protected List<Promise> concurrentPrepare(final Object var, final Long epoch) {
+        return BlockingAcceptorAdapter.await(concurrentPrepareAsync(var, epoch));
     }
 
     protected List<Accepted> concurrentCommit(final Long epoch, final Object var, final Object value) {
-        CompletionService<Accepted> completionService = new ExecutorCompletionService<>(this.executor);
-        for (final Acceptor acceptor : acceptors) {
-            completionService.submit(() -> acceptor.accept(epoch, var, value));
-        }
+        return BlockingAcceptorAdapter.await(concurrentCommitAsync(epoch, var, value));
+    }
+
+    protected CompletableFuture<Responses<Promise>> concurrentPrepareAsync(final Object var, final Long epoch) {
+        final QuorumSystem quorums = this.quorums;
+        return concurrentCall("phase 1", this.recorder.phase1, quorums::isPhase1Quorum,
+                acceptor -> acceptor.prepareAsync(epoch, var));
+    }
+
+    protected CompletableFuture<Responses<Accepted>> concurrentCommitAsync(final Long epoch, final Object var,
+                                                                           final Object value) {
+        final QuorumSystem quorums = this.quorums;
+        return concurrentCall("phase 2", this.recorder.phase2, quorums::isPhase2Quorum,
+                acceptor -> acceptor.acceptAsync(epoch, var, value));
+    }
+
+    protected CompletableFuture<Responses<Promise>> concurrentPrepareAllAsync(final Long epoch) {
+        final QuorumSystem quorums = this.quorums;
+        return concurrentCall("leader phase 1", this.recorder.leaderPhase1, quorums::isPhase1Quorum,
+                acceptor -> acceptor.prepareAllAsync(epoch));
+    }
 
-        List<Accepted> accepteds = new ArrayList<>(acceptors.size());
+    protected CompletableFuture<Responses<Accepted>> concurrentAcceptWithoutPrepareAsync(final Long epoch,
+                                                                                         final Object var,
+                                                                                         final Object value) {
+        final QuorumSystem quorums = this.quorums;
+        return concurrentCall("leader phase 2", this.recorder.leaderPhase2, quorums::isPhase2Quorum,
+                acceptor -> acceptor.acceptWithoutPrepareAsync(epoch, var, value));
+    }
+
+    /**
+     * Sends the call to every acceptor, the future completes as soon as the acceptors which ACKed form a quorum or
+     * can not any more, or fails with a {@link TimeoutException} when the phase timeout passes first. The calls still
+     * in flight are cancelled
+     */
+    protected <T extends NAKAble> CompletableFuture<Responses<T>> concurrentCall(final String phase,
+                                                                                 final PhaseMetrics metrics,
+                                                                                 final LongPredicate isQuorum,
+                                                                                 final Function<AsyncAcceptor, CompletableFuture<T>> call) {
+        final QuorumCollector<T> collector = new QuorumCollector<>(phase, acceptors.size(), isQuorum);
+        final long timeoutNanos = this.phaseTimeoutNanos;
+        // virtual time under a Simulator, so a run replays with the same latencies
+        final Clock clock = this.clock;
+        final long start = clock.nanoTime();
+        final Future<?> timer = this.scheduler.schedule(() -> collector.timeout(timeoutNanos), timeoutNanos,
+                TimeUnit.NANOSECONDS);
+        collector.future().whenComplete((responses, e) -> {
+            timer.cancel(false);
+            metrics.latency.record(clock.nanoTime() - start);
+        });
+
+        final Metrics.Histogram[] acceptorLatency = this.recorder.acceptorLatency;
         for (int i = 0; i < acceptors.size(); i++) {
-            Future<Accepted> future = null;
+            final int acceptor = i;
+            final Metrics.Histogram latency = acceptorLatency[i];
+            CompletableFuture<T> future;
             try {
-                future = completionService.take();
-                Accepted accepted = future.get();
-                accepteds.add(accepted);
-            } catch (InterruptedException e) {
-                throw new RuntimeException("propose (phase 2) was interrupted", e);
-            } catch (ExecutionException e) {
-                processExecutionExeception(e);
+                future = call.apply(acceptors.get(i));
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
             }
+            collector.track(future);
+            future.whenComplete((response, e) -> {
+                if (e instanceof CancellationException) {
+                    // a straggler after the outcome was known, its latency says nothing
+                } else if (e != null) {
+                    processExecutionExeception(phase, e);
+                } else if (response != null) {
+                    latency.record(clock.nanoTime() - start);
+                    if (response.isNAK()) {
+                        metrics.naks.increment();
+                    }
+                }
+                collector.onResponse(acceptor, response, e);
+            });
         }
-        return accepteds;
+        return collector.future();
     }
 
-    protected Object nextRound(Long maxEpoch, Object var, Object value) {
-        LockSupport.parkNanos(this.sleepTimeWhenNeedNextRound);
-        Long newEpoch = generateEpoch(maxEpoch, var);
-        return proposeWithEpoch(newEpoch, var, value);
+    /**
+     * A phase which got no quorum in time, which costs the round but not the proposal
+     */
+    private static boolean isPhaseTimeout(Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        return cause instanceof TimeoutException;
     }
 
-    protected void processExecutionExeception(ExecutionException e) {
-        e.printStackTrace();
+    protected void processExecutionExeception(String phase, Throwable e) {
+        LOG.error("propose (" + phase + ") failed", e);
     }
 
-    synchronized protected Long generateEpoch(Long preEpoch, Object var) {
-        long lastEpoch = this.lastEpoch.get();
-        if (preEpoch > lastEpoch) {
-            long epoch = (preEpoch / this.proposerNum + 1) * this.proposerNum + this.proposerId;
-            this.lastEpoch.set(epoch);
-            return epoch;
-        } else {
-            long epoch = ((lastEpoch / this.proposerNum + 1) * this.proposerNum) + this.proposerId;
-            this.lastEpoch.set(epoch);
-            return epoch;
+    /**
+     * The next epoch of ours greater than preEpoch and than every epoch we took for the stripe of the var before.
+     * Vars of other stripes keep their own epochs, so a var we keep losing does not push up theirs. A null var stands
+     * for a leader election, which covers every var, so the epochs of vars start above those of our elections. Our
+     * elections take even rounds and vars odd ones, so an election never reuses an epoch some var round of ours
+     * already sent, whatever the stripes raced to
+     */
+    protected long generateEpoch(long preEpoch, Object var) {
+        boolean election = var == null;
+        int slot = election ? LEADER_SLOT : epochStripe(var) * EPOCH_PADDING;
+        long floor = Math.max(preEpoch, this.lastEpochs.get(LEADER_SLOT));
+        while (true) {
+            long lastEpoch = this.lastEpochs.get(slot);
+            long round = Math.max(floor, lastEpoch) / this.proposerNum + 1;
+            if (((round & 1) == 0) != election) {
+                round++;
+            }
+            long epoch = round * this.proposerNum + this.proposerId;
+            if (this.lastEpochs.compareAndSet(slot, lastEpoch, epoch)) {
+                return epoch;
+            }
         }
     }
 
+    private static int epochStripe(Object var) {
+        int h = var.hashCode();
+        h ^= (h >>> 16);
+        return h & (EPOCH_STRIPES - 1);
+    }
+
+    private static AtomicLongArray createLastEpochs() {
+        AtomicLongArray lastEpochs = new AtomicLongArray(LEADER_SLOT + 1);
+        for (int i = 0; i < lastEpochs.length(); i++) {
+            lastEpochs.set(i, -1L);
+        }
+        return lastEpochs;
+    }
+
+    public long getPhaseTimeout(TimeUnit unit) {
+        return unit.convert(this.phaseTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * How long one phase waits for a quorum before the round counts as lost, the retry policy and the proposal
+     * timeout then decide whether another round runs
+     */
+    public void setPhaseTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout should be positive, but is " + timeout);
+        }
+        this.phaseTimeoutNanos = TimeUnit.NANOSECONDS.convert(timeout, unit);
+    }
+
+    public long getProposalTimeout(TimeUnit unit) {
+        return unit.convert(this.proposalTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * How long a proposal may take over all its rounds before it fails with a {@link TimeoutException}
+     */
+    public void setProposalTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout should be positive, but is " + timeout);
+        }
+        this.proposalTimeoutNanos = TimeUnit.NANOSECONDS.convert(timeout, unit);
+    }
+
+    public int getMaxPendingProposals() {
+        return this.maxPendingProposals;
+    }
+
+    /**
+     * How many proposals of different vars may be in flight at once, proposals beyond fail at once with an
+     * {@link OverloadException} instead of queueing up behind the others. Proposals joining one in flight for their
+     * var are always admitted, reads are not counted
+     */
+    public void setMaxPendingProposals(int maxPendingProposals) {
+        if (maxPendingProposals <= 0) {
+            throw new IllegalArgumentException("maxPendingProposals should be positive, but is " + maxPendingProposals);
+        }
+        this.maxPendingProposals = maxPendingProposals;
+    }
+
+    /**
+     * Makes the Multi-Paxos leader hold a lease, so it answers reads on its own. The acceptors must grant leases of
+     * the same duration, the drift margin is cut off our end of the lease to allow for clocks running at different
+     * rates
+     */
+    public void setLease(long duration, long driftMargin, TimeUnit unit) {
+        if (driftMargin < 0 || driftMargin >= duration) {
+            throw new IllegalArgumentException("driftMargin should be in [0, " + duration + "), but is "
+                    + driftMargin);
+        }
+        this.leaseDriftNanos = unit.toNanos(driftMargin);
+        this.leaseNanos = unit.toNanos(duration);
+    }
+
+    public void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Where phase timeouts, proposal deadlines and delayed rounds run, a timer thread shared by every proposer by
+     * default
+     */
+    public void setScheduler(Scheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Decides how long to wait before the next round of a lost proposal, and when to give up with a
+     * {@link TimeoutException}
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Instead of a next round, a proposal lost to a proposer with a smaller id is forwarded to it. Only forwarding
+     * down the ids keeps proposals from going around in circles, and the proposer with id 0 always competes itself
+     *
+     * @param proposers every proposer by its id, this one included, null to compete again
+     */
+    public void setForwarding(List<? extends AsyncProposer> proposers) {
+        if (proposers != null && proposers.size() != this.proposerNum) {
+            throw new IllegalArgumentException("proposers should be " + this.proposerNum + ", but are "
+                    + proposers.size());
+        }
+        this.peers = proposers;
+    }
+
+    public QuorumSystem getQuorums() {
+        return this.quorums;
+    }
+
+    /**
+     * Which acceptors form a quorum in each phase, a majority in both by default. Phase 1 covers prepare and
+     * prepareAll, phase 2 accept and acceptWithoutPrepare
+     */
+    public void setQuorums(QuorumSystem quorums) {
+        if (quorums.getAcceptorNum() != this.acceptors.size()) {
+            throw new IllegalArgumentException("quorums should be of " + this.acceptors.size()
+                    + " acceptors, but are of " + quorums.getAcceptorNum());
+        }
+        this.quorums = quorums;
+    }
+
+    public Metrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Where the proposer records, under its name: the latency of each phase until its outcome was known and the NAKs
+     * it got, the rounds every decision took, the latency of each acceptor, the queue of the acceptor threads, and
+     * the proposals pending and rejected for overload
+     */
+    public void setMetrics(Metrics metrics) {
+        this.recorder = new Recorder(metrics);
+        this.metrics = metrics;
+        metrics.gauge(this.name + ".pending", this.pendingProposals::get);
+        if (this.executor instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor executor = (ThreadPoolExecutor) this.executor;
+            metrics.gauge(this.name + ".executor.queue", () -> executor.getQueue().size());
+        }
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    /**
+     * Where the proposer records the phases of every round and of the leader, see {@link Tracer}
+     */
+    public void setTracer(Tracer tracer) {
+        this.traceSource = tracer.source(this.name);
+        this.tracer = tracer;
+    }
+
+    public boolean isMultiPaxos() {
+        return multiPaxos;
+    }
+
+    /**
+     * Multi-Paxos mode: keep the epoch won by a single phase 1 for every var and skip phase 1 until preempted
+     */
+    public void setMultiPaxos(boolean multiPaxos) {
+        this.multiPaxos = multiPaxos;
+        if (!multiPaxos) {
+            this.leadership.set(NOT_LEADER);
+        }
+    }
+
+    /**
+     * The learner is told the value of every var this proposer gets chosen
+     */
+    public void addLearner(Learner learner) {
+        this.learners.add(learner);
+    }
+
+    /**
+     * Where learners are called, the common pool by default
+     */
+    public void setLearnerExecutor(Executor learnerExecutor) {
+        this.learnerExecutor = learnerExecutor;
+    }
+
+    public boolean isLeader() {
+        return this.leadership.get() != NOT_LEADER;
+    }
+
     @Override
     public void stop() {
+        if (this.executor == null) {
+            return;
+        }
         this.executor.shutdown();
         try {
             this.executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
@@ -242,4 +794,242 @@ public class DefaultProposer implements Proposer {
             e.printStackTrace();
         }
     }
+
+    private static ScheduledThreadPoolExecutor createTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "paxos_proposer_timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    protected static final class PhaseMetrics {
+
+        private final Metrics.Histogram latency;
+        private final Metrics.Counter   naks;
+
+        PhaseMetrics(Metrics metrics, String prefix) {
+            this.latency = metrics.histogram(prefix + ".latency");
+            this.naks = metrics.counter(prefix + ".nak");
+        }
+    }
+
+    /**
+     * The metrics of a proposer, looked up once
+     */
+    private final class Recorder {
+
+        private final PhaseMetrics        phase1;
+        private final PhaseMetrics        phase2;
+        private final PhaseMetrics        leaderPhase1;
+        private final PhaseMetrics        leaderPhase2;
+        private final Metrics.Histogram[] acceptorLatency;
+        private final Metrics.Histogram   rounds;
+        private final Metrics.Counter     rejected;
+
+        Recorder(Metrics metrics) {
+            this.phase1 = new PhaseMetrics(metrics, name + ".phase1");
+            this.phase2 = new PhaseMetrics(metrics, name + ".phase2");
+            this.leaderPhase1 = new PhaseMetrics(metrics, name + ".leader_phase1");
+            this.leaderPhase2 = new PhaseMetrics(metrics, name + ".leader_phase2");
+            this.acceptorLatency = new Metrics.Histogram[acceptors.size()];
+            for (int i = 0; i < acceptorLatency.length; i++) {
+                acceptorLatency[i] = metrics.histogram(name + ".acceptor_" + i + ".latency");
+            }
+            this.rounds = metrics.histogram(name + ".rounds");
+            this.rejected = metrics.counter(name + ".rejected");
+        }
+    }
+
+    /**
+     * What a round does next: the value was chosen, phase 2 goes on with the value, or the round was lost to a
+     * greater epoch
+     */
+    protected static final class Step {
+
+        private static final int CHOSEN = 0;
+        private static final int ACCEPT = 1;
+        private static final int LOST   = 2;
+
+        private final int        kind;
+        private final long       epoch;
+        private final Object     value;
+
+        private Step(int kind, long epoch, Object value) {
+            this.kind = kind;
+            this.epoch = epoch;
+            this.value = value;
+        }
+
+        static Step chosen(Object value) {
+            return new Step(CHOSEN, -1L, value);
+        }
+
+        static Step accept(long epoch, Object value) {
+            return new Step(ACCEPT, epoch, value);
+        }
+
+        static Step lost(long maxEpoch) {
+            return new Step(LOST, maxEpoch, null);
+        }
+    }
+
+    /**
+     * One proposal of a var, run round after round until its value is chosen, the retry policy gives up or the
+     * proposal timeout passes. Every phase ends in a {@link Step} and the callback of the phase starts the next one,
+     * so a proposal holds one future however many rounds it loses, and no stack builds up
+     */
+    private final class Proposal {
+
+        private final Object                    var;
+        private final Object                    value;
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+        private int                             round  = 0;
+        // the epoch of the current round
+        private long                            epoch  = VarStore.NO_EPOCH;
+
+        Proposal(Object var, Object value) {
+            this.var = var;
+            this.value = value;
+            final long timeoutNanos = proposalTimeoutNanos;
+            final Future<?> deadline = scheduler.schedule(() -> result.completeExceptionally(
+                    new TimeoutException("proposal of var " + var + " timeout after " + timeoutNanos + " ns")),
+                    timeoutNanos, TimeUnit.NANOSECONDS);
+            this.result.whenComplete((chosen, e) -> deadline.cancel(false));
+        }
+
+        CompletableFuture<Object> start(long epoch) {
+            prepare(epoch);
+            return result;
+        }
+
+        CompletableFuture<Object> accept(long epoch, Object value) {
+            step(Step.accept(epoch, value));
+            return result;
+        }
+
+        CompletableFuture<Object> lose(long maxEpoch) {
+            step(Step.lost(maxEpoch));
+            return result;
+        }
+
+        private void prepare(long epoch) {
+            if (result.isDone()) {
+                return;
+            }
+            this.epoch = epoch;
+            tracer.record(Tracer.Event.PROPOSE_PREPARE, traceSource, epoch, round, var);
+            concurrentPrepareAsync(var, epoch).whenComplete((promises, e) -> {
+                if (e != null) {
+                    onPhaseError(epoch, e);
+                    return;
+                }
+                step(() -> onPromises(epoch, var, value, promises));
+            });
+        }
+
+        private void step(Supplier<Step> next) {
+            try {
+                step(next.get());
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        }
+
+        private void step(Step step) {
+            if (result.isDone()) {
+                return;
+            }
+            switch (step.kind) {
+                case Step.CHOSEN:
+                    tracer.record(Tracer.Event.PROPOSE_CHOSEN, traceSource, epoch, round, var);
+                    complete(step.value);
+                    break;
+                case Step.ACCEPT:
+                    this.epoch = step.epoch;
+                    tracer.record(Tracer.Event.PROPOSE_ACCEPT, traceSource, step.epoch, round, var);
+                    concurrentCommitAsync(step.epoch, var, step.value).whenComplete((accepteds, e) -> {
+                        if (e != null) {
+                            onPhaseError(step.epoch, e);
+                            return;
+                        }
+                        step(() -> onAccepteds(step.epoch, var, step.value, accepteds));
+                    });
+                    break;
+                default:
+                    tracer.record(Tracer.Event.PROPOSE_LOST, traceSource, epoch, step.epoch, var);
+                    nextRound(step.epoch);
+            }
+        }
+
+        /**
+         * A phase which timed out, a lost message or a slow acceptor, loses the round, anything else fails the
+         * proposal
+         */
+        private void onPhaseError(long epoch, Throwable e) {
+            if (isPhaseTimeout(e)) {
+                step(Step.lost(epoch));
+            } else {
+                result.completeExceptionally(e);
+            }
+        }
+
+        /**
+         * Records the rounds before completing, callers of the proposal run as soon as it completes
+         */
+        private void complete(Object chosen) {
+            if (!result.isDone()) {
+                recorder.rounds.record(round + 1);
+                result.complete(chosen);
+            }
+        }
+
+        /**
+         * The round was lost to maxEpoch. With forwarding, a proposal lost to a proposer with a smaller id is handed
+         * to that proposer, otherwise it runs again in a greater epoch after the delay of the retry policy
+         */
+        private void nextRound(long maxEpoch) {
+            List<? extends AsyncProposer> peers = DefaultProposer.this.peers;
+            int owner = (int) (maxEpoch % proposerNum);
+            if (peers != null && owner < proposerId && value != null) {
+                tracer.record(Tracer.Event.PROPOSE_FORWARD, traceSource, maxEpoch, owner, var);
+                peers.get(owner).proposeAsync(var, value).whenComplete((chosen, e) -> {
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        complete(chosen);
+                    }
+                });
+                return;
+            }
+
+            round++;
+            long delayNanos = retryPolicy.delayNanos(round);
+            if (delayNanos < 0) {
+                result.completeExceptionally(new TimeoutException("give up var " + var + " after " + round
+                        + " lost rounds"));
+                return;
+            }
+            scheduler.schedule(() -> prepare(generateEpoch(maxEpoch, var)), delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * The epoch we won phase 1 for every var with, and the vars we must not skip phase 1 for: those which held a value
+     * when we won and those we already sent a value for. With leases, also until when no one else can choose a value
+     */
+    protected static class Leadership {
+
+        private final long          epoch;
+        private final Set<Object>   preparedVars;
+        private volatile long       leaseExpiresNanos;
+        private final AtomicBoolean renewing = new AtomicBoolean();
+
+        Leadership(long epoch, Set<Object> preparedVars) {
+            this.epoch = epoch;
+            this.preparedVars = preparedVars;
+        }
+    }
 }
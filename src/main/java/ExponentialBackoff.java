@@ -0,0 +1,67 @@
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Waits a random time up to base * 2^(round - 1), capped at max. The randomness keeps dueling proposers from retrying
+ * in lockstep, and the doubling lets them spread out as far as contention needs
+ */
+public class ExponentialBackoff implements RetryPolicy {
+
+    private final long   baseNanos;
+    private final long   maxNanos;
+    private final int    maxRetries;
+    // null for the random of the current thread
+    private final Random random;
+
+    /**
+     * Retries forever
+     */
+    public ExponentialBackoff(long base, long max, TimeUnit unit) {
+        this(base, max, unit, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxRetries rounds after the first one before giving up
+     */
+    public ExponentialBackoff(long base, long max, TimeUnit unit, int maxRetries) {
+        this(base, max, unit, maxRetries, null);
+    }
+
+    /**
+     * @param random where the waits are drawn from, a seeded one replays the same waits, null for the random of the
+     *            calling thread
+     */
+    public ExponentialBackoff(long base, long max, TimeUnit unit, int maxRetries, Random random) {
+        if (base <= 0) {
+            throw new IllegalArgumentException("base should be positive, but is " + base);
+        }
+        if (max < base) {
+            throw new IllegalArgumentException("max should be at least " + base + ", but is " + max);
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries should not be negative, but is " + maxRetries);
+        }
+        this.baseNanos = unit.toNanos(base);
+        this.maxNanos = unit.toNanos(max);
+        this.maxRetries = maxRetries;
+        this.random = random;
+    }
+
+    @Override
+    public long delayNanos(int round) {
+        if (round > maxRetries) {
+            return -1L;
+        }
+        int shift = round - 1;
+        long ceiling = maxNanos;
+        // doubling past the leading zeros of base would overflow
+        if (shift < Long.numberOfLeadingZeros(baseNanos) - 1) {
+            ceiling = Math.min(baseNanos << shift, maxNanos);
+        }
+        if (random == null) {
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        }
+        return Math.floorMod(random.nextLong(), ceiling + 1);
+    }
+}
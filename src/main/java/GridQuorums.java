@@ -0,0 +1,60 @@
+/**
+ * Acceptors laid out in rows of the given columns, acceptor i in row i / columns. A phase 2 quorum is every acceptor
+ * of some row, a phase 1 quorum is at least one acceptor of every row, so the two always share an acceptor. Many
+ * short rows make phase 2 cheap: with 3 rows of 2, a value is chosen by 2 of the 6 acceptors, and phase 1 still goes
+ * on with any 1 acceptor of each row up
+ */
+public class GridQuorums implements QuorumSystem {
+
+    private final int    columns;
+    private final long[] rows;
+
+    public GridQuorums(int rows, int columns) {
+        if (rows <= 0) {
+            throw new IllegalArgumentException("rows should be positive, but is " + rows);
+        }
+        if (columns <= 0) {
+            throw new IllegalArgumentException("columns should be positive, but is " + columns);
+        }
+        if (rows * columns > MAX_ACCEPTORS) {
+            throw new IllegalArgumentException("acceptors should be at most " + MAX_ACCEPTORS + ", but are "
+                    + rows * columns);
+        }
+        this.columns = columns;
+        this.rows = new long[rows];
+        long row = columns == Long.SIZE ? -1L : (1L << columns) - 1;
+        for (int i = 0; i < rows; i++) {
+            this.rows[i] = row << (i * columns);
+        }
+    }
+
+    @Override
+    public int getAcceptorNum() {
+        return rows.length * columns;
+    }
+
+    @Override
+    public boolean isPhase1Quorum(long acceptors) {
+        for (long row : rows) {
+            if ((acceptors & row) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isPhase2Quorum(long acceptors) {
+        for (long row : rows) {
+            if ((acceptors & row) == row) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "GridQuorums [rows=" + rows.length + ", columns=" + columns + "]";
+    }
+}
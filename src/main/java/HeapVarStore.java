@@ -0,0 +1,66 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps every var in a {@link ConcurrentHashMap}, the default store of {@link DefaultAcceptor}
+ */
+public class HeapVarStore implements VarStore {
+
+    private final Map<Object, State> states = new ConcurrentHashMap<>();
+    private volatile long leaderEpoch = NO_EPOCH;
+
+    @Override
+    public boolean read(Object var, State state) {
+        State stored = states.get(var);
+        if (stored == null) {
+            return false;
+        }
+        state.promisedEpoch = stored.promisedEpoch;
+        state.acceptedEpoch = stored.acceptedEpoch;
+        state.value = stored.value;
+        return true;
+    }
+
+    @Override
+    public void promise(Object var, long epoch) {
+        getOrCreate(var).promisedEpoch = epoch;
+    }
+
+    @Override
+    public void accept(Object var, long epoch, Object value) {
+        State state = getOrCreate(var);
+        state.value = value;
+        state.acceptedEpoch = epoch;
+    }
+
+    private State getOrCreate(Object var) {
+        return states.computeIfAbsent(var, k -> new State());
+    }
+
+    @Override
+    public long leaderEpoch() {
+        return leaderEpoch;
+    }
+
+    @Override
+    public void leader(long epoch) {
+        this.leaderEpoch = epoch;
+    }
+
+    @Override
+    public void forEach(Visitor visitor) {
+        for (Map.Entry<Object, State> entry : states.entrySet()) {
+            State state = entry.getValue();
+            visitor.visit(entry.getKey(), state.promisedEpoch, state.acceptedEpoch);
+        }
+    }
+
+    @Override
+    public int size() {
+        return states.size();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,604 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.ObjectCodec;
+
+/**
+ * Keeps every var in two memory-mapped files instead of on the heap, so millions of vars cost the GC nothing and a
+ * restarted acceptor finds its state already there.
+ * <p>
+ * The index file holds open-addressing tables of fixed-size slots, [long key ref][long promised epoch][long value
+ * ref], probed linearly. Once the newest table is three quarters full a table of twice its size is
+ * added behind it. Vars never move between tables, so probes stay lock-free, and a lookup tries the newest table
+ * first. Keys and values are encoded by {@link ObjectCodec} into [int capacity][int length][bytes] records of the data
+ * file, and the key ref keeps 24 bits of the key hash above the offset so most probes never touch the data file.
+ * Objects are only materialized when a var is read.
+ * <p>
+ * A value record starts with the epoch it was accepted in, and an accept publishes it with one 8-byte store of the
+ * value ref, so a crash never pairs a value with the epoch of another.
+ * <p>
+ * A value takes a record of the power of two capacity it fits in. The record of the value it replaces is marked free
+ * and taken by the next value of that capacity, and the free records are collected again when the store is opened,
+ * so a var accepted over and over does not grow the data file. Writes reach the page cache at once, so they survive a
+ * crash of the process but not of the machine, use an {@link AcceptorLog} for that
+ */
+public class MappedVarStore implements VarStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedVarStore.class);
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final int  MAGIC              = 0x50415857;
+    private static final int  HEADER_SIZE        = 4096;
+    private static final int  CAPACITY_OFFSET    = 8;
+    private static final int  DATA_END_OFFSET    = 16;
+    private static final int  SIZE_OFFSET        = 24;
+    private static final int  LEADER_OFFSET      = 32;
+    private static final int  TABLES_OFFSET      = 40;
+    // the vars in each table
+    private static final int  TABLE_SIZE_OFFSET  = 64;
+    private static final int  MAX_TABLES         = 32;
+
+    private static final int  SLOT_SIZE          = 24;
+    private static final int  PROMISED           = 8;
+    private static final int  VALUE              = 16;
+    private static final int  SLOT_CHUNK_SHIFT   = 20;
+    // a slot ref is the table above the slot
+    private static final int  TABLE_SHIFT        = 48;
+
+    private static final int  DATA_CHUNK_SHIFT   = 24;
+    private static final int  DATA_CHUNK_SIZE    = 1 << DATA_CHUNK_SHIFT;
+    private static final int  RECORD_HEADER      = 2 * Integer.BYTES;
+    private static final int  MIN_VALUE_CAPACITY = 16;
+    private static final int  TAG_SHIFT          = 40;
+    private static final long OFFSET_MASK        = (1L << TAG_SHIFT) - 1;
+
+    private final File                 dir;
+    private final FileChannel          indexChannel;
+    private final FileChannel          dataChannel;
+    private final MappedByteBuffer     header;
+    private final long                 capacity;
+    private volatile Table[]           tables;
+    private volatile MappedByteBuffer[] data;
+    // guards inserting a var, adding a table and allocating and freeing in the data file
+    private final Object               insertLock = new Object();
+    // the free records of each power of two capacity
+    private final Offsets[]            free       = new Offsets[Integer.SIZE];
+    private long                       dataEnd;
+    private volatile int               size;
+
+    /**
+     * Opens the store in the dir, or creates it for about the given number of vars. An existing store starts from the
+     * capacity it was created with, and any store grows as vars are added
+     */
+    public MappedVarStore(File dir, long vars) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can not create store dir " + dir);
+        }
+        this.dir = dir;
+        this.indexChannel = FileChannel.open(new File(dir, "vars.idx").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.dataChannel = FileChannel.open(new File(dir, "vars.dat").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean exists = indexChannel.size() >= HEADER_SIZE;
+        this.header = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        int tableNum;
+        if (exists) {
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("not a var store " + dir);
+            }
+            this.capacity = header.getLong(CAPACITY_OFFSET);
+            this.dataEnd = header.getLong(DATA_END_OFFSET);
+            this.size = (int) header.getLong(SIZE_OFFSET);
+            tableNum = header.getInt(TABLES_OFFSET);
+        } else {
+            this.capacity = capacityFor(vars);
+            this.dataEnd = 0L;
+            this.size = 0;
+            tableNum = 1;
+            header.putLong(CAPACITY_OFFSET, capacity);
+            header.putLong(DATA_END_OFFSET, 0L);
+            header.putLong(SIZE_OFFSET, 0L);
+            header.putLong(LEADER_OFFSET, NO_EPOCH);
+            header.putInt(TABLES_OFFSET, tableNum);
+            header.putLong(TABLE_SIZE_OFFSET, 0L);
+            header.putInt(0, MAGIC);
+        }
+        Table[] opened = new Table[tableNum];
+        for (int i = 0; i < tableNum; i++) {
+            opened[i] = mapTable(i);
+            opened[i].size = header.getLong(TABLE_SIZE_OFFSET + i * Long.BYTES);
+        }
+        this.tables = opened;
+
+        List<MappedByteBuffer> chunks = new ArrayList<>();
+        for (long offset = 0; offset < dataEnd; offset += DATA_CHUNK_SIZE) {
+            chunks.add(dataChannel.map(FileChannel.MapMode.READ_WRITE, offset, DATA_CHUNK_SIZE));
+        }
+        this.data = chunks.toArray(new MappedByteBuffer[0]);
+        for (int i = 0; i < free.length; i++) {
+            free[i] = new Offsets();
+        }
+        long freeBytes = collectFree();
+        LOG.info("opened var store [{}], capacity [{}], tables [{}], vars [{}], data [{}] bytes, [{}] bytes free", dir,
+                capacity, tableNum, size, dataEnd, freeBytes);
+    }
+
+    private static long capacityFor(long vars) {
+        long capacity = 1024;
+        while (capacity / 4 * 3 < vars) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Maps the table with the given number, each table twice the size of the one before
+     */
+    private Table mapTable(int number) throws IOException {
+        long tableCapacity = capacity << number;
+        long offset = HEADER_SIZE + (capacity * ((1L << number) - 1)) * SLOT_SIZE;
+        long slotsPerChunk = Math.min(tableCapacity, 1L << SLOT_CHUNK_SHIFT);
+        MappedByteBuffer[] chunks = new MappedByteBuffer[(int) (tableCapacity / slotsPerChunk)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = indexChannel.map(FileChannel.MapMode.READ_WRITE, offset + i * slotsPerChunk * SLOT_SIZE,
+                    slotsPerChunk * SLOT_SIZE);
+        }
+        return new Table(tableCapacity, chunks);
+    }
+
+    /**
+     * Walks the records of the data file for the ones marked free
+     *
+     * @return the free bytes
+     */
+    private long collectFree() {
+        long freeBytes = 0L;
+        long offset = 0L;
+        while (offset < dataEnd) {
+            MappedByteBuffer chunk = data[(int) (offset >>> DATA_CHUNK_SHIFT)];
+            int position = (int) (offset & (DATA_CHUNK_SIZE - 1));
+            int recordCapacity = DATA_CHUNK_SIZE - position < RECORD_HEADER ? 0 : chunk.getInt(position);
+            if (recordCapacity == 0) {
+                // the rest of the chunk was skipped by a record which did not fit
+                offset = ((offset >>> DATA_CHUNK_SHIFT) + 1) << DATA_CHUNK_SHIFT;
+                continue;
+            }
+            if (recordCapacity < 0) {
+                free[Integer.numberOfTrailingZeros(-recordCapacity)].push(offset);
+                freeBytes += -recordCapacity;
+            }
+            offset += RECORD_HEADER + Math.abs(recordCapacity);
+        }
+        return freeBytes;
+    }
+
+    @Override
+    public boolean read(Object var, State state) {
+        byte[] key = encode(var);
+        long slot = find(key, hash(key));
+        if (slot < 0) {
+            return false;
+        }
+        MappedByteBuffer chunk = slotChunk(slot);
+        int position = slotPosition(slot);
+        state.promisedEpoch = chunk.getLong(position + PROMISED);
+        long valueRef = chunk.getLong(position + VALUE);
+        if (valueRef == 0L) {
+            state.acceptedEpoch = NO_EPOCH;
+            state.value = null;
+        } else {
+            state.acceptedEpoch = acceptedEpoch(valueRef - 1);
+            state.value = decodeValue(valueRef - 1);
+        }
+        return true;
+    }
+
+    @Override
+    public void promise(Object var, long epoch) {
+        long slot = findOrInsert(var);
+        slotChunk(slot).putLong(slotPosition(slot) + PROMISED, epoch);
+    }
+
+    @Override
+    public void accept(Object var, long epoch, Object value) {
+        long slot = findOrInsert(var);
+        MappedByteBuffer chunk = slotChunk(slot);
+        int position = slotPosition(slot);
+        long oldRef = chunk.getLong(position + VALUE);
+        long valueRef = writeValue(epoch, encode(value)) + 1;
+        // the value and its epoch replace the old ones at once
+        LONGS.setRelease(chunk, position + VALUE, valueRef);
+        // only reads of this var, which the stripe lock keeps out, still look at the old value
+        if (oldRef != 0L) {
+            free(oldRef - 1);
+        }
+    }
+
+    @Override
+    public long leaderEpoch() {
+        return (long) LONGS.getAcquire(header, LEADER_OFFSET);
+    }
+
+    @Override
+    public void leader(long epoch) {
+        LONGS.setRelease(header, LEADER_OFFSET, epoch);
+    }
+
+    @Override
+    public void forEach(Visitor visitor) {
+        for (Table table : tables) {
+            for (long slot = 0; slot < table.capacity; slot++) {
+                MappedByteBuffer chunk = table.chunk(slot);
+                int position = slotPosition(slot);
+                long keyRef = (long) LONGS.getAcquire(chunk, position);
+                if (keyRef != 0L) {
+                    long valueRef = chunk.getLong(position + VALUE);
+                    visitor.visit(decode((keyRef & OFFSET_MASK) - 1), chunk.getLong(position + PROMISED),
+                            valueRef == 0L ? NO_EPOCH : acceptedEpoch(valueRef - 1));
+                }
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot ref of the key, or -1
+     */
+    private long find(byte[] key, long hash) {
+        Table[] current = tables;
+        for (int t = current.length - 1; t >= 0; t--) {
+            long slot = current[t].probe(key, hash);
+            if (slot >= 0) {
+                return (long) t << TABLE_SHIFT | slot;
+            }
+        }
+        return -1L;
+    }
+
+    private long findOrInsert(Object var) {
+        byte[] key = encode(var);
+        long hash = hash(key);
+        long slot = find(key, hash);
+        if (slot >= 0) {
+            return slot;
+        }
+        synchronized (insertLock) {
+            slot = find(key, hash);
+            if (slot >= 0) {
+                return slot;
+            }
+            int t = tables.length - 1;
+            Table table = tables[t];
+            if (table.size >= table.maxSize) {
+                table = addTable();
+                t++;
+            }
+            slot = -1 - table.probe(key, hash);
+            long keyRef = writeKey(key) + 1;
+            MappedByteBuffer chunk = table.chunk(slot);
+            int position = slotPosition(slot);
+            chunk.putLong(position + PROMISED, NO_EPOCH);
+            chunk.putLong(position + VALUE, 0L);
+            // the slot is visible to lock-free probes from here on
+            LONGS.setRelease(chunk, position, (hash >>> TAG_SHIFT) << TAG_SHIFT | keyRef);
+            table.size++;
+            size++;
+            header.putLong(TABLE_SIZE_OFFSET + t * Long.BYTES, table.size);
+            header.putLong(SIZE_OFFSET, size);
+            return (long) t << TABLE_SHIFT | slot;
+        }
+    }
+
+    /**
+     * Adds a table of twice the size of the newest one, under the insert lock
+     */
+    private Table addTable() {
+        Table[] current = tables;
+        if (current.length == MAX_TABLES) {
+            throw new PaxosException("var store " + dir + " is full, it holds at most " + size + " vars");
+        }
+        Table table;
+        try {
+            table = mapTable(current.length);
+        } catch (IOException e) {
+            throw new PaxosException("fail to grow var store " + dir, e);
+        }
+        header.putLong(TABLE_SIZE_OFFSET + current.length * Long.BYTES, 0L);
+        header.putInt(TABLES_OFFSET, current.length + 1);
+        Table[] grown = Arrays.copyOf(current, current.length + 1);
+        grown[current.length] = table;
+        tables = grown;
+        LOG.info("grew var store [{}] to [{}] slots", dir, table.capacity * 2 - capacity);
+        return table;
+    }
+
+    /**
+     * Writes the key to a record of its own size, keys are never freed
+     *
+     * @return the offset of the record
+     */
+    private long writeKey(byte[] key) {
+        checkRecord(key.length, key);
+        long offset = allocate(key.length);
+        writeRecord(offset, key.length, key);
+        return offset;
+    }
+
+    /**
+     * Writes the epoch and the value to a free record of their power of two capacity, or a new one
+     *
+     * @return the offset of the record
+     */
+    private long writeValue(long epoch, byte[] encoded) {
+        byte[] value = new byte[Long.BYTES + encoded.length];
+        ByteBuffer.wrap(value).putLong(epoch).put(encoded);
+        int recordCapacity = value.length <= MIN_VALUE_CAPACITY ? MIN_VALUE_CAPACITY
+                : Integer.highestOneBit(value.length - 1) << 1;
+        checkRecord(recordCapacity, value);
+        long offset;
+        synchronized (insertLock) {
+            Offsets offsets = free[Integer.numberOfTrailingZeros(recordCapacity)];
+            offset = offsets.isEmpty() ? allocate(recordCapacity) : offsets.pop();
+        }
+        writeRecord(offset, recordCapacity, value);
+        return offset;
+    }
+
+    private static void checkRecord(int recordCapacity, byte[] bytes) {
+        if (recordCapacity < 0 || RECORD_HEADER + (long) recordCapacity > DATA_CHUNK_SIZE) {
+            throw new PaxosException("can not store " + bytes.length + " bytes, records are at most "
+                    + DATA_CHUNK_SIZE + " bytes");
+        }
+    }
+
+    /**
+     * Appends room for a record to the data file, under the insert lock, records never cross a chunk
+     *
+     * @return the offset of the record
+     */
+    private long allocate(int recordCapacity) {
+        synchronized (insertLock) {
+            int length = RECORD_HEADER + recordCapacity;
+            long offset = dataEnd;
+            if ((offset & (DATA_CHUNK_SIZE - 1)) + length > DATA_CHUNK_SIZE) {
+                offset = ((offset >>> DATA_CHUNK_SHIFT) + 1) << DATA_CHUNK_SHIFT;
+            }
+            ensureChunk((int) (offset >>> DATA_CHUNK_SHIFT));
+            dataEnd = offset + length;
+            header.putLong(DATA_END_OFFSET, dataEnd);
+            return offset;
+        }
+    }
+
+    private void writeRecord(long offset, int recordCapacity, byte[] bytes) {
+        MappedByteBuffer chunk = data[(int) (offset >>> DATA_CHUNK_SHIFT)];
+        int position = (int) (offset & (DATA_CHUNK_SIZE - 1));
+        chunk.putInt(position + Integer.BYTES, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            chunk.put(position + RECORD_HEADER + i, bytes[i]);
+        }
+        chunk.putInt(position, recordCapacity);
+    }
+
+    /**
+     * Marks the value record free, a crash before that only leaks the record
+     */
+    private void free(long offset) {
+        MappedByteBuffer chunk = data[(int) (offset >>> DATA_CHUNK_SHIFT)];
+        int position = (int) (offset & (DATA_CHUNK_SIZE - 1));
+        int recordCapacity = chunk.getInt(position);
+        synchronized (insertLock) {
+            chunk.putInt(position, -recordCapacity);
+            free[Integer.numberOfTrailingZeros(recordCapacity)].push(offset);
+        }
+    }
+
+    private void ensureChunk(int index) {
+        MappedByteBuffer[] chunks = data;
+        if (index < chunks.length) {
+            return;
+        }
+        MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+        System.arraycopy(chunks, 0, grown, 0, chunks.length);
+        try {
+            for (int i = chunks.length; i <= index; i++) {
+                grown[i] = dataChannel.map(FileChannel.MapMode.READ_WRITE, (long) i * DATA_CHUNK_SIZE,
+                        DATA_CHUNK_SIZE);
+            }
+        } catch (IOException e) {
+            throw new PaxosException("fail to grow var store " + dir, e);
+        }
+        data = grown;
+    }
+
+    private byte[] read(long offset) {
+        MappedByteBuffer chunk = data[(int) (offset >>> DATA_CHUNK_SHIFT)];
+        int position = (int) (offset & (DATA_CHUNK_SIZE - 1));
+        byte[] bytes = new byte[chunk.getInt(position + Integer.BYTES)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = chunk.get(position + RECORD_HEADER + i);
+        }
+        return bytes;
+    }
+
+    private boolean keyEquals(long offset, byte[] key) {
+        MappedByteBuffer chunk = data[(int) (offset >>> DATA_CHUNK_SHIFT)];
+        int position = (int) (offset & (DATA_CHUNK_SIZE - 1));
+        if (chunk.getInt(position + Integer.BYTES) != key.length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (chunk.get(position + RECORD_HEADER + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private MappedByteBuffer slotChunk(long slotRef) {
+        return tables[(int) (slotRef >>> TABLE_SHIFT)].chunk(slotRef & ((1L << TABLE_SHIFT) - 1));
+    }
+
+    private static int slotPosition(long slot) {
+        return (int) (slot & ((1L << SLOT_CHUNK_SHIFT) - 1)) * SLOT_SIZE;
+    }
+
+    private static byte[] encode(Object o) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+            ObjectCodec.write(new DataOutputStream(bytes), o);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new PaxosException("fail to encode " + o, e);
+        }
+    }
+
+    private Object decode(long offset) {
+        return decode(read(offset), 0, offset);
+    }
+
+    private Object decodeValue(long offset) {
+        return decode(read(offset), Long.BYTES, offset);
+    }
+
+    private Object decode(byte[] bytes, int from, long offset) {
+        try {
+            return ObjectCodec.read(new DataInputStream(new ByteArrayInputStream(bytes, from, bytes.length - from)));
+        } catch (IOException e) {
+            throw new PaxosException("fail to decode var store " + dir + " at " + offset, e);
+        }
+    }
+
+    /**
+     * @return the epoch at the start of the value record
+     */
+    private long acceptedEpoch(long offset) {
+        MappedByteBuffer chunk = data[(int) (offset >>> DATA_CHUNK_SHIFT)];
+        return chunk.getLong((int) (offset & (DATA_CHUNK_SIZE - 1)) + RECORD_HEADER);
+    }
+
+    /**
+     * FNV-1a over the encoded key, mixed so the low bits pick the slot and the high bits make the tag
+     */
+    private static long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h ^= b;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Flushes both files to disk
+     */
+    public void force() {
+        header.force();
+        for (Table table : tables) {
+            for (MappedByteBuffer chunk : table.chunks) {
+                chunk.force();
+            }
+        }
+        for (MappedByteBuffer chunk : data) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        indexChannel.close();
+        dataChannel.close();
+    }
+
+    /**
+     * One open-addressing table of the index file
+     */
+    private final class Table {
+
+        private final long               capacity;
+        private final long               maxSize;
+        private final MappedByteBuffer[] chunks;
+        // guarded by the insert lock
+        private long                     size;
+
+        Table(long capacity, MappedByteBuffer[] chunks) {
+            this.capacity = capacity;
+            this.maxSize = capacity / 4 * 3;
+            this.chunks = chunks;
+        }
+
+        MappedByteBuffer chunk(long slot) {
+            return chunks[(int) (slot >>> SLOT_CHUNK_SHIFT)];
+        }
+
+        /**
+         * @return the slot of the key, or -1 - the empty slot where it would go
+         */
+        long probe(byte[] key, long hash) {
+            long mask = capacity - 1;
+            long tag = hash >>> TAG_SHIFT;
+            long slot = hash & mask;
+            while (true) {
+                long keyRef = (long) LONGS.getAcquire(chunk(slot), slotPosition(slot));
+                if (keyRef == 0L) {
+                    return -1 - slot;
+                }
+                if (keyRef >>> TAG_SHIFT == tag && keyEquals((keyRef & OFFSET_MASK) - 1, key)) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * A stack of offsets which boxes none of them
+     */
+    private static final class Offsets {
+
+        private long[] offsets = new long[16];
+        private int    size;
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void push(long offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            offsets[size++] = offset;
+        }
+
+        long pop() {
+            return offsets[--size];
+        }
+    }
+}
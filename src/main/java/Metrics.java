@@ -0,0 +1,61 @@
+import java.util.function.LongSupplier;
+
+/**
+ * Where proposers, acceptors and logs record what they do. Every instance holds a {@link DefaultMetrics} of its own
+ * unless given a registry to share, metric names start with the name of the instance.
+ * <p>
+ * Recording is on the hot path: a counter or histogram is looked up once and kept, recording must not block
+ */
+public interface Metrics {
+
+    Metrics NOOP = new Metrics() {
+
+        @Override
+        public Counter counter(String name) {
+            return n -> {
+            };
+        }
+
+        @Override
+        public Histogram histogram(String name) {
+            return value -> {
+            };
+        }
+
+        @Override
+        public void gauge(String name, LongSupplier value) {
+        }
+    };
+
+    /**
+     * @return the counter of the name, the same one for the same name
+     */
+    Counter counter(String name);
+
+    /**
+     * @return the histogram of the name, the same one for the same name
+     */
+    Histogram histogram(String name);
+
+    /**
+     * A value read only when the metrics are read, like a queue depth
+     */
+    void gauge(String name, LongSupplier value);
+
+    interface Counter {
+
+        void add(long n);
+
+        default void increment() {
+            add(1L);
+        }
+    }
+
+    interface Histogram {
+
+        /**
+         * @param value not negative, latencies are in nanoseconds
+         */
+        void record(long value);
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * A proposal was refused at once since the proposer already has as many proposals in flight as it admits, see
+ * {@link DefaultProposer#setMaxPendingProposals(int)}. Nothing was sent, the caller may back off and try again
+ */
+public class OverloadException extends PaxosException {
+
+    public OverloadException(String message){
+        super(message);
+    }
+}
@@ -1,15 +1,37 @@
+import java.util.Collection;
+import java.util.Collections;
+
 public class Promise implements NAKAble {
 
-    private Long    preEpoch;
-    private Object  var;
-    private Object  value;
-    private boolean NAK;
+    // epochs are kept unboxed, VarStore.NO_EPOCH when absent
+    private long               preEpoch;
+    private long               acceptedEpoch;
+    private Object             var;
+    private Object             value;
+    private boolean            NAK;
+    private Collection<Object> acceptedVars;
 
     public Promise(Long preEpoch, Object var, Object value, boolean isNAK){
+        this(preEpoch, null, var, value, isNAK, Collections.emptyList());
+    }
+
+    public Promise(Long preEpoch, Long acceptedEpoch, Object var, Object value, boolean isNAK,
+                   Collection<Object> acceptedVars){
+        this(toEpoch(preEpoch), toEpoch(acceptedEpoch), var, value, isNAK, acceptedVars);
+    }
+
+    /**
+     * @param preEpoch VarStore.NO_EPOCH when absent
+     * @param acceptedEpoch VarStore.NO_EPOCH when absent
+     */
+    public Promise(long preEpoch, long acceptedEpoch, Object var, Object value, boolean isNAK,
+                   Collection<Object> acceptedVars){
         this.preEpoch = preEpoch;
+        this.acceptedEpoch = acceptedEpoch;
         this.var = var;
         this.value = value;
         this.NAK = isNAK;
+        this.acceptedVars = acceptedVars;
     }
 
     public static Promise create(Long preEpoch, Object var, Object value) {
@@ -20,10 +42,60 @@ public class Promise implements NAKAble {
         return new Promise(preEpoch, var, value, isNAK);
     }
 
+    public static Promise create(long preEpoch, Object var, Object value, boolean isNAK) {
+        return new Promise(preEpoch, VarStore.NO_EPOCH, var, value, isNAK, Collections.emptyList());
+    }
+
+    /**
+     * An ACK of a prepare for a var which holds a value accepted in acceptedEpoch
+     */
+    public static Promise createAccepted(Long preEpoch, Object var, Object value, Long acceptedEpoch) {
+        return new Promise(preEpoch, acceptedEpoch, var, value, false, Collections.emptyList());
+    }
+
+    /**
+     * @param acceptedEpoch VarStore.NO_EPOCH when the var holds no value
+     */
+    public static Promise createAccepted(long preEpoch, Object var, Object value, long acceptedEpoch) {
+        return new Promise(preEpoch, acceptedEpoch, var, value, false, Collections.emptyList());
+    }
+
+    /**
+     * An ACK of a prepareAll, with every var the acceptor holds a value for
+     */
+    public static Promise createForAll(Long preEpoch, Collection<Object> acceptedVars) {
+        return new Promise(preEpoch, null, null, null, false, acceptedVars);
+    }
+
+    public static Promise createForAll(long preEpoch, Collection<Object> acceptedVars) {
+        return new Promise(preEpoch, VarStore.NO_EPOCH, null, null, false, acceptedVars);
+    }
+
     public Long getPreEpoch() {
+        return toLong(preEpoch);
+    }
+
+    /**
+     * @return the pre epoch without boxing, VarStore.NO_EPOCH when absent
+     */
+    public long getPreEpochAsLong() {
         return preEpoch;
     }
 
+    /**
+     * @return the epoch the value was accepted in, null when there is no value
+     */
+    public Long getAcceptedEpoch() {
+        return toLong(acceptedEpoch);
+    }
+
+    /**
+     * @return the accepted epoch without boxing, VarStore.NO_EPOCH when there is no value
+     */
+    public long getAcceptedEpochAsLong() {
+        return acceptedEpoch;
+    }
+
     public Object getVar() {
         return var;
     }
@@ -32,6 +104,13 @@ public class Promise implements NAKAble {
         return value;
     }
 
+    /**
+     * @return the vars the acceptor holds a value for, only filled in by a prepareAll
+     */
+    public Collection<Object> getAcceptedVars() {
+        return acceptedVars;
+    }
+
     /**
      * Whether it is a negative acknowledge, it means that the Promise is negative, and the epoch submitted by the Proposer is too low     *
      * @return
@@ -41,4 +120,11 @@ public class Promise implements NAKAble {
         return NAK;
     }
 
-}
+    static long toEpoch(Long epoch) {
+        return epoch == null ? VarStore.NO_EPOCH : epoch;
+    }
+
+    static Long toLong(long epoch) {
+        return epoch == VarStore.NO_EPOCH ? null : epoch;
+    }
+}
\ No newline at end of file
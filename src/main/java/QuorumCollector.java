@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongPredicate;
+
+/**
+ * Gathers the responses of one phase and completes as soon as the outcome is known: the acceptors which ACKed form a
+ * quorum, or they can not any more together with those yet to answer. The calls still in flight are cancelled then,
+ * and responses arriving later are dropped
+ */
+class QuorumCollector<T extends NAKAble> {
+
+    private final String phase;
+    private final int acceptorNum;
+    private final LongPredicate isQuorum;
+    private final List<T> responses;
+    private final List<CompletableFuture<T>> calls;
+    private final CompletableFuture<Responses<T>> future = new CompletableFuture<>();
+    // set under the lock once the outcome is known, the future is completed after leaving it
+    private boolean done = false;
+    // bit i is set once acceptor i answered so
+    private long acked = 0L;
+    private long naked = 0L;
+    private long failed = 0L;
+
+    QuorumCollector(String phase, int acceptorNum, LongPredicate isQuorum) {
+        this.phase = phase;
+        this.acceptorNum = acceptorNum;
+        this.isQuorum = isQuorum;
+        this.responses = new ArrayList<>(acceptorNum);
+        this.calls = new ArrayList<>(acceptorNum);
+    }
+
+    synchronized void track(CompletableFuture<T> call) {
+        calls.add(call);
+    }
+
+    /**
+     * @param acceptor the index of the acceptor
+     */
+    void onResponse(int acceptor, T response, Throwable error) {
+        Responses<T> outcome;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            long bit = 1L << acceptor;
+            if (error != null || response == null) {
+                failed |= bit;
+            } else if (response.isNAK()) {
+                naked |= bit;
+                responses.add(response);
+            } else {
+                acked |= bit;
+                responses.add(response);
+            }
+
+            boolean quorum = isQuorum.test(acked);
+            long pending = all() & ~(acked | naked | failed);
+            if (!quorum && isQuorum.test(acked | pending)) {
+                return;
+            }
+            // no response is added once done, so the list is handed over as it is
+            done = true;
+            outcome = new Responses<>(responses, acked, quorum);
+        }
+        cancelPending();
+        // the dependent stages run here, the next phase included, so not under the lock
+        future.complete(outcome);
+    }
+
+    void timeout(long timeoutNanos) {
+        TimeoutException timeout;
+        synchronized (this) {
+            if (done) {
+                return;
+            }
+            done = true;
+            timeout = new TimeoutException(String.format(
+                    "%s timed out after %d ns, ACK [%d], NAK [%d], failed [%d] of [%d] acceptors", phase,
+                    timeoutNanos, Long.bitCount(acked), Long.bitCount(naked), Long.bitCount(failed), acceptorNum));
+        }
+        cancelPending();
+        future.completeExceptionally(timeout);
+    }
+
+    private synchronized void cancelPending() {
+        // the callbacks of the cancelled calls come back here and find it done
+        for (int i = 0; i < calls.size(); i++) {
+            CompletableFuture<T> call = calls.get(i);
+            if (!call.isDone()) {
+                call.cancel(false);
+            }
+        }
+    }
+
+    CompletableFuture<Responses<T>> future() {
+        return future;
+    }
+
+    private long all() {
+        return acceptorNum == Long.SIZE ? -1L : (1L << acceptorNum) - 1;
+    }
+}
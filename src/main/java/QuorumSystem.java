@@ -0,0 +1,23 @@
+/**
+ * Which sets of acceptors form a quorum in each phase. Paxos is safe as long as every phase 1 quorum intersects every
+ * phase 2 quorum, the quorums of one phase need not intersect each other, so phase 2, which runs for every value, may
+ * get by with fewer acceptors than phase 1, which runs once per leader.
+ * <p>
+ * A set of acceptors is a bit mask of their indexes in the proposer's acceptor list, so there are at most 64
+ */
+public interface QuorumSystem {
+
+    int MAX_ACCEPTORS = Long.SIZE;
+
+    int getAcceptorNum();
+
+    /**
+     * @param acceptors bit i is set for acceptor i
+     */
+    boolean isPhase1Quorum(long acceptors);
+
+    /**
+     * @param acceptors bit i is set for acceptor i
+     */
+    boolean isPhase2Quorum(long acceptors);
+}
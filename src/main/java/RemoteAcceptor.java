@@ -0,0 +1,350 @@
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import util.ObjectCodec;
+
+/**
+ * An {@link Acceptor} served by an {@link AcceptorServer} on another node. Every call is a frame with its own request
+ * id on one shared connection, so any number of calls can be in flight. The connection is opened again, without
+ * blocking the caller, by the next call once it broke, calls sent on the broken one fail with a
+ * {@link PaxosException}. Responses are decoded and calls completed on an executor, never on the selector thread.
+ * <p>
+ * With batching, calls are held back until maxBatchSize of them are waiting or the linger time is up, and go out as
+ * one frame, which the server hands to a {@link BatchAcceptor} in one go
+ */
+public class RemoteAcceptor implements Acceptor, AsyncAcceptor, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteAcceptor.class);
+
+    // a batch goes out once this big, whatever maxBatchSize is
+    private static final int                                 MAX_BATCH_BYTES = 64 * 1024;
+    private static final ScheduledThreadPoolExecutor         FLUSHER = createFlusher();
+
+    private final InetSocketAddress                          address;
+    private final WireLoop                                   loop;
+    private final AtomicLong                                 ids     = new AtomicLong();
+    private final Map<Long, Call>                            pending = new ConcurrentHashMap<>();
+    // the connection calls go out on
+    private volatile Handler                                 handler;
+    private final int                                        maxBatchSize;
+    private final long                                       lingerNanos;
+    private volatile Executor                                executor = ForkJoinPool.commonPool();
+    private volatile long                                    connectTimeoutNanos = TimeUnit.SECONDS.toNanos(3);
+    // guards the calls held back for the next batch
+    private final Object                                     batchLock = new Object();
+    private List<ByteBuffer>                                 batch   = new ArrayList<>();
+    private List<Long>                                       batchIds = new ArrayList<>();
+    private int                                              batchBytes;
+    private boolean                                          flushScheduled;
+
+    public RemoteAcceptor(InetSocketAddress address) throws IOException {
+        this(address, 1, 0L, TimeUnit.NANOSECONDS);
+    }
+
+    public RemoteAcceptor(InetSocketAddress address, int maxBatchSize, long linger, TimeUnit unit)
+                                                                                                   throws IOException{
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("maxBatchSize should be positive, but is " + maxBatchSize);
+        }
+        this.address = address;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = unit.toNanos(linger);
+        this.loop = new WireLoop("remote_acceptor_loop_" + address.getPort());
+    }
+
+    @Override
+    public Promise prepare(Long epoch, Object var) {
+        return BlockingAcceptorAdapter.await(prepareAsync(epoch, var));
+    }
+
+    @Override
+    public Accepted accept(Long epoch, Object var, Object value) {
+        return BlockingAcceptorAdapter.await(acceptAsync(epoch, var, value));
+    }
+
+    @Override
+    public Promise prepareAll(Long epoch) {
+        return BlockingAcceptorAdapter.await(prepareAllAsync(epoch));
+    }
+
+    @Override
+    public Accepted acceptWithoutPrepare(Long epoch, Object var, Object value) {
+        return BlockingAcceptorAdapter.await(acceptWithoutPrepareAsync(epoch, var, value));
+    }
+
+    @Override
+    public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+        return call(WireProtocol.PREPARE, epoch, var, null);
+    }
+
+    @Override
+    public CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value) {
+        return call(WireProtocol.ACCEPT, epoch, var, value);
+    }
+
+    @Override
+    public CompletableFuture<Promise> prepareAllAsync(Long epoch) {
+        return call(WireProtocol.PREPARE_ALL, epoch, null, null);
+    }
+
+    @Override
+    public CompletableFuture<Accepted> acceptWithoutPrepareAsync(Long epoch, Object var, Object value) {
+        return call(WireProtocol.ACCEPT_WITHOUT_PREPARE, epoch, var, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> call(byte type, Long epoch, Object var, Object value) {
+        Call call = new Call();
+        long id = ids.incrementAndGet();
+        pending.put(id, call);
+        // a cancelled call is forgotten, its response is dropped when it comes
+        call.future.whenComplete((result, e) -> pending.remove(id));
+        ByteBuffer frame;
+        try {
+            frame = WireProtocol.request(type, id, epoch, var, value);
+        } catch (Exception e) {
+            call.future.completeExceptionally(new PaxosException("fail to encode call to acceptor " + address, e));
+            return (CompletableFuture<T>) (CompletableFuture<?>) call.future;
+        }
+        if (maxBatchSize == 1) {
+            send(Collections.singletonList(frame), Collections.singletonList(id));
+        } else {
+            hold(frame, id);
+        }
+        return (CompletableFuture<T>) (CompletableFuture<?>) call.future;
+    }
+
+    private void hold(ByteBuffer frame, long id) {
+        if (frame.remaining() >= MAX_BATCH_BYTES) {
+            // alone, so no batch grows over the frame limit
+            send(Collections.singletonList(frame), Collections.singletonList(id));
+            return;
+        }
+        List<ByteBuffer> full = null;
+        List<Long> fullIds = null;
+        boolean schedule = false;
+        synchronized (batchLock) {
+            batch.add(frame);
+            batchIds.add(id);
+            batchBytes += frame.remaining();
+            if (batch.size() >= maxBatchSize || batchBytes >= MAX_BATCH_BYTES) {
+                full = batch;
+                fullIds = batchIds;
+                batch = new ArrayList<>(maxBatchSize);
+                batchIds = new ArrayList<>(maxBatchSize);
+                batchBytes = 0;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                schedule = true;
+            }
+        }
+        if (full != null) {
+            send(full, fullIds);
+        }
+        if (schedule) {
+            FLUSHER.schedule(this::flush, lingerNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void flush() {
+        List<ByteBuffer> frames;
+        List<Long> ids;
+        synchronized (batchLock) {
+            flushScheduled = false;
+            if (batch.isEmpty()) {
+                return;
+            }
+            frames = batch;
+            ids = batchIds;
+            batch = new ArrayList<>(maxBatchSize);
+            batchIds = new ArrayList<>(maxBatchSize);
+            batchBytes = 0;
+        }
+        send(frames, ids);
+    }
+
+    private void send(List<ByteBuffer> frames, List<Long> ids) {
+        ByteBuffer frame;
+        Handler handler;
+        try {
+            frame = frames.size() == 1 ? frames.get(0) : WireProtocol.batch(frames);
+            handler = connect();
+        } catch (IOException e) {
+            fail(ids, e);
+            return;
+        }
+        for (Long id : ids) {
+            Call call = pending.get(id);
+            if (call != null) {
+                call.handler = handler;
+            }
+        }
+        handler.connection.opened().whenComplete((connection, e) -> {
+            if (e == null) {
+                try {
+                    connection.send(frame);
+                    return;
+                } catch (IOException sendFailure) {
+                    e = sendFailure;
+                }
+            }
+            fail(ids, e);
+        });
+    }
+
+    private void fail(List<Long> ids, Throwable cause) {
+        PaxosException failure = new PaxosException("fail to call acceptor " + address, cause);
+        for (Long id : ids) {
+            Call call = pending.get(id);
+            if (call != null) {
+                executor.execute(() -> call.future.completeExceptionally(failure));
+            }
+        }
+    }
+
+    /**
+     * @return the open connection, or a new one which is still connecting
+     */
+    private Handler connect() throws IOException {
+        Handler handler = this.handler;
+        if (handler != null && !handler.connection.isClosed()) {
+            return handler;
+        }
+        synchronized (this) {
+            handler = this.handler;
+            if (handler == null || handler.connection.isClosed()) {
+                handler = new Handler();
+                WireLoop.Connection connection = loop.connect(address, handler);
+                handler.connection = connection;
+                this.handler = handler;
+                FLUSHER.schedule(() -> {
+                    if (!connection.opened().isDone()) {
+                        connection.close(new IOException("connecting to " + address + " timed out"));
+                    }
+                }, connectTimeoutNanos, TimeUnit.NANOSECONDS);
+            }
+            return handler;
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor createFlusher() {
+        ScheduledThreadPoolExecutor flusher = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "remote_acceptor_flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.setRemoveOnCancelPolicy(true);
+        return flusher;
+    }
+
+    public InetSocketAddress getAddress() {
+        return address;
+    }
+
+    /**
+     * Where responses are decoded and calls completed, the common pool by default
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * How long connecting may take before the calls waiting for it fail
+     */
+    public void setConnectTimeout(long timeout, TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout should be positive, but is " + timeout);
+        }
+        this.connectTimeoutNanos = unit.toNanos(timeout);
+    }
+
+    @Override
+    public void close() throws IOException {
+        loop.close();
+    }
+
+    /**
+     * A call in flight and the connection it went out on
+     */
+    private static class Call {
+
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private volatile Handler                handler;
+    }
+
+    /**
+     * One connection to the acceptor, only the calls sent on it fail when it closes
+     */
+    private class Handler implements WireLoop.FrameHandler {
+
+        private volatile WireLoop.Connection connection;
+
+        @Override
+        public void onFrame(WireLoop.Connection connection, byte[] frame) {
+            executor.execute(() -> read(connection, frame));
+        }
+
+        private void read(WireLoop.Connection connection, byte[] frame) {
+            long id = -1L;
+            try {
+                DataInputStream in = WireProtocol.open(frame);
+                byte type = in.readByte();
+                id = ObjectCodec.readVarLong(in);
+                if (type == WireProtocol.BATCH) {
+                    for (byte[] response : WireProtocol.readBatch(in)) {
+                        read(connection, response);
+                    }
+                    return;
+                }
+                Call call = pending.get(id);
+                if (call == null) {
+                    return;
+                }
+                switch (type) {
+                    case WireProtocol.PROMISE:
+                        call.future.complete(WireProtocol.readPromise(in));
+                        break;
+                    case WireProtocol.ACCEPTED:
+                        call.future.complete(WireProtocol.readAccepted(in));
+                        break;
+                    case WireProtocol.ERROR:
+                        call.future.completeExceptionally(new PaxosException("acceptor " + address + " failed, "
+                                + ObjectCodec.read(in)));
+                        break;
+                    default:
+                        throw new IOException("unknown response type " + type);
+                }
+            } catch (IOException e) {
+                LOG.error("fail to read response " + id + " from " + address, e);
+                connection.close(e);
+            }
+        }
+
+        @Override
+        public void onClose(WireLoop.Connection connection, IOException cause) {
+            LOG.warn("connection to acceptor [{}] closed", address);
+            PaxosException failure = new PaxosException("connection to acceptor " + address + " closed", cause);
+            for (Call call : pending.values()) {
+                if (call.handler == this) {
+                    executor.execute(() -> call.future.completeExceptionally(failure));
+                }
+            }
+        }
+    }
+}
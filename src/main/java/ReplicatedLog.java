@@ -0,0 +1,268 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A replicated log on top of a {@link Proposer}, every slot is a var of its own. Values appended concurrently are
+ * gathered into one {@link Batch} per slot, bounded by maxBatchSize and lingerMillis, so the whole batch is decided by
+ * a single Paxos instance (a single accept round when the proposer runs in Multi-Paxos mode).
+ * <p>
+ * Up to window slots are in flight at the same time, each completes on its own, while learners always see the
+ * decisions in slot order
+ */
+public class ReplicatedLog {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicatedLog.class);
+
+    private static final AtomicInteger SEQUENCE = new AtomicInteger();
+    private static final String NAME_PREFIX = "log_";
+    // the wait before proposing again in a slot whose proposal failed
+    private static final RetryPolicy SLOT_RETRY = new ExponentialBackoff(1, 1000, TimeUnit.MILLISECONDS);
+
+    private final String name;
+    private final Proposer proposer;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Semaphore window;
+    private final ExecutorService pipeline;
+    private final List<Learner> learners = new CopyOnWriteArrayList<>();
+    // decided slots waiting for the slots before them
+    private final Map<Long, Object> decided = new ConcurrentSkipListMap<>();
+    private long nextLearnSlot = 0L;
+    private final BlockingQueue<Entry> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong nextSlot = new AtomicLong(0L);
+    private final AtomicLong batchSequence = new AtomicLong(0L);
+    private final Thread batcher;
+    private volatile boolean stopped = false;
+
+    private volatile Metrics metrics;
+    private volatile Metrics.Histogram batchSizes;
+    private volatile Metrics.Histogram lingers;
+
+    public ReplicatedLog(Proposer proposer, int maxBatchSize, long lingerMillis) {
+        this(proposer, maxBatchSize, lingerMillis, 1);
+    }
+
+    public ReplicatedLog(Proposer proposer, int maxBatchSize, long lingerMillis, int window) {
+        this(NAME_PREFIX + SEQUENCE.getAndIncrement(), proposer, maxBatchSize, lingerMillis, window);
+    }
+
+    public ReplicatedLog(String name, Proposer proposer, int maxBatchSize, long lingerMillis, int window) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize should be positive, but is " + maxBatchSize);
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("window should be positive, but is " + window);
+        }
+        this.name = name;
+        this.proposer = proposer;
+        this.maxBatchSize = maxBatchSize;
+        this.lingerNanos = TimeUnit.NANOSECONDS.convert(lingerMillis, TimeUnit.MILLISECONDS);
+        this.window = new Semaphore(window);
+        setMetrics(new DefaultMetrics());
+        this.pipeline = Executors.newFixedThreadPool(window);
+        this.batcher = new Thread(this::runBatcher, name + "_batcher");
+        this.batcher.setDaemon(true);
+        this.batcher.start();
+    }
+
+    /**
+     * @return a future of the slot the value was decided in
+     */
+    public CompletableFuture<Long> append(Object value) {
+        Entry entry = new Entry(value);
+        if (stopped) {
+            entry.future.completeExceptionally(new PaxosException("log " + name + " was stopped"));
+            return entry.future;
+        }
+        pending.add(entry);
+        // stop may have drained the queue between the check and the add, then nothing else takes the entry
+        if (stopped && pending.remove(entry)) {
+            entry.future.completeExceptionally(new PaxosException("log " + name + " was stopped"));
+        }
+        return entry.future;
+    }
+
+    public void addLearner(Learner learner) {
+        this.learners.add(learner);
+    }
+
+    private void runBatcher() {
+        while (!stopped) {
+            List<Entry> entries = new ArrayList<>(maxBatchSize);
+            try {
+                // wait for a free slot of the window first, values keep gathering into the batch meanwhile
+                window.acquire();
+                entries.add(pending.take());
+                long firstEnqueued = entries.get(0).enqueueNanos;
+                long deadline = firstEnqueued + lingerNanos;
+                while (entries.size() < maxBatchSize) {
+                    long waitNanos = deadline - System.nanoTime();
+                    Entry entry = waitNanos > 0 ? pending.poll(waitNanos, TimeUnit.NANOSECONDS) : pending.poll();
+                    if (entry == null) {
+                        break;
+                    }
+                    entries.add(entry);
+                }
+                recordBatch(entries.size(), System.nanoTime() - firstEnqueued);
+                pipeline.execute(() -> decideInWindow(entries));
+            } catch (InterruptedException e) {
+                failEntries(entries, new PaxosException("log " + name + " was stopped"));
+                break;
+            }
+        }
+        failPending();
+    }
+
+    private void decideInWindow(List<Entry> entries) {
+        try {
+            decide(entries);
+        } catch (RuntimeException e) {
+            LOG.error("fail to decide batch of log [" + name + "]", e);
+            failEntries(entries, e);
+        } finally {
+            window.release();
+        }
+    }
+
+    private void decide(List<Entry> entries) {
+        List<Object> values = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            values.add(entry.value);
+        }
+        Batch batch = new Batch(name + "_" + batchSequence.getAndIncrement(), values);
+
+        while (true) {
+            long slot = nextSlot.getAndIncrement();
+            Object chosen = decideSlot(slot, batch);
+            learnInOrder(slot, chosen);
+            if (batch.equals(chosen)) {
+                LOG.debug("log [{}] decided {} in slot [{}]", name, batch, slot);
+                for (Entry entry : entries) {
+                    entry.future.complete(slot);
+                }
+                return;
+            }
+            // another proposer took the slot, try the next one
+            LOG.info("log [{}] lost slot [{}] to [{}], retry {} in next slot", name, slot, chosen, batch);
+        }
+    }
+
+    /**
+     * Proposes the batch in the slot until something is chosen there. A slot taken from nextSlot must be filled, or
+     * every slot after it waits forever to be learned, and the batch may have been accepted by the failed proposal
+     * anyway
+     */
+    private Object decideSlot(long slot, Batch batch) {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return proposer.propose(slot, batch);
+            } catch (RuntimeException e) {
+                if (stopped) {
+                    throw e;
+                }
+                LOG.warn("log [{}] fail to decide slot [{}] in attempt [{}], {}", name, slot, attempt, e.getMessage());
+            }
+            try {
+                TimeUnit.NANOSECONDS.sleep(SLOT_RETRY.delayNanos(attempt));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new PaxosException("log " + name + " was stopped", e);
+            }
+        }
+    }
+
+    private void learnInOrder(long slot, Object chosen) {
+        decided.put(slot, chosen);
+        synchronized (decided) {
+            Object value;
+            while ((value = decided.remove(nextLearnSlot)) != null) {
+                for (Learner learner : learners) {
+                    learner.learn(nextLearnSlot, value);
+                }
+                nextLearnSlot++;
+            }
+        }
+    }
+
+    private void recordBatch(int batchSize, long lingerNanos) {
+        batchSizes.record(batchSize);
+        lingers.record(lingerNanos);
+    }
+
+    private void failPending() {
+        Entry entry;
+        while ((entry = pending.poll()) != null) {
+            entry.future.completeExceptionally(new PaxosException("log " + name + " was stopped"));
+        }
+    }
+
+    private static void failEntries(List<Entry> entries, Throwable cause) {
+        for (Entry entry : entries) {
+            entry.future.completeExceptionally(cause);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the slot the next batch will try first
+     */
+    public long getNextSlot() {
+        return nextSlot.get();
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Where the log records, under its name: the size of every batch, and the time from the first value of a batch
+     * being appended to the batch being sent
+     */
+    public void setMetrics(Metrics metrics) {
+        this.batchSizes = metrics.histogram(name + ".batch.size");
+        this.lingers = metrics.histogram(name + ".batch.linger");
+        this.metrics = metrics;
+    }
+
+    public void stop() {
+        stopped = true;
+        batcher.interrupt();
+        try {
+            batcher.join();
+            pipeline.shutdownNow();
+            pipeline.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        failPending();
+    }
+
+    private static class Entry {
+
+        private final Object value;
+        private final long enqueueNanos = System.nanoTime();
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        Entry(Object value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * The responses of one phase in the order they came, and whether the acceptors which ACKed form a quorum of the phase
+ * in the proposer's {@link QuorumSystem}
+ */
+public final class Responses<T extends NAKAble> extends AbstractList<T> {
+
+    private final List<T> responses;
+    private final long    ackedAcceptors;
+    private final boolean quorum;
+
+    Responses(List<T> responses, long ackedAcceptors, boolean quorum) {
+        this.responses = responses;
+        this.ackedAcceptors = ackedAcceptors;
+        this.quorum = quorum;
+    }
+
+    @Override
+    public T get(int index) {
+        return responses.get(index);
+    }
+
+    @Override
+    public int size() {
+        return responses.size();
+    }
+
+    public boolean isQuorum() {
+        return quorum;
+    }
+
+    /**
+     * @return bit i is set when acceptor i ACKed
+     */
+    public long getAckedAcceptors() {
+        return ackedAcceptors;
+    }
+}
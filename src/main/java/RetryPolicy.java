@@ -0,0 +1,11 @@
+/**
+ * How a proposer waits between the rounds of a proposal it keeps losing
+ */
+public interface RetryPolicy {
+
+    /**
+     * @param round the round about to start, 1 for the first retry
+     * @return nanoseconds to wait before the round, negative to give up the proposal
+     */
+    long delayNanos(int round);
+}
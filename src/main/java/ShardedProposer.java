@@ -0,0 +1,235 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads vars over independent Paxos groups, each a proposer with acceptors of its own, so every group decides its
+ * vars without contending with the others. A var is hashed onto one of a fixed number of slots and a slot belongs to
+ * one group, so moving a slot moves only the vars hashed onto it.
+ * <p>
+ * After a slot moved, a var of it is first read from the groups the slot belonged to before, newest first, and the
+ * value found is proposed in its new group, so a value chosen before the move stays chosen. A slot only moves once
+ * the proposals of its vars running through this facade finished, so none of them can choose a value in the old
+ * group after a value was carried over from it. Every facade routing the same vars must make the same moves
+ */
+public class ShardedProposer implements Proposer, AsyncProposer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ShardedProposer.class);
+
+    public static final int DEFAULT_SLOTS = 1024;
+
+    private final List<AsyncProposer> groups;
+    private final int                 mask;
+    // copy on write, the slots and where they were before
+    private volatile Slot[]           slots;
+
+    public ShardedProposer(List<? extends AsyncProposer> groups) {
+        this(groups, DEFAULT_SLOTS);
+    }
+
+    /**
+     * @param slots a power of two, the slots are dealt round robin to the groups
+     */
+    public ShardedProposer(List<? extends AsyncProposer> groups, int slots) {
+        if (groups.isEmpty()) {
+            throw new IllegalArgumentException("groups should not be empty");
+        }
+        if (slots < groups.size() || Integer.bitCount(slots) != 1) {
+            throw new IllegalArgumentException("slots should be a power of two not less than " + groups.size()
+                    + ", but is " + slots);
+        }
+        this.groups = new ArrayList<>(groups);
+        this.mask = slots - 1;
+        this.slots = new Slot[slots];
+        for (int i = 0; i < slots; i++) {
+            this.slots[i] = new Slot(i % groups.size(), Collections.emptyList());
+        }
+    }
+
+    @Override
+    public Object propose(Object var, Object value) {
+        return BlockingAcceptorAdapter.await(proposeAsync(var, value));
+    }
+
+    @Override
+    public CompletableFuture<Object> proposeAsync(Object var, Object value) {
+        Slot slot = this.slots[slotOf(var)];
+        CompletableFuture<Void> moved = slot.enter();
+        if (moved != null) {
+            // the slot is moving, the proposal goes to where it moves to
+            return moved.thenCompose(v -> proposeAsync(var, value));
+        }
+        CompletableFuture<Object> result;
+        try {
+            result = propose(slot, var, value);
+        } catch (RuntimeException e) {
+            slot.leave();
+            throw e;
+        }
+        result.whenComplete((chosen, e) -> slot.leave());
+        return result;
+    }
+
+    private CompletableFuture<Object> propose(Slot slot, Object var, Object value) {
+        AsyncProposer group = this.groups.get(slot.group);
+        if (slot.previousGroups.isEmpty() || slot.migrated.contains(var)) {
+            return group.proposeAsync(var, value);
+        }
+        return readPrevious(slot, 0, var).thenCompose(previous -> {
+            Object proposed = previous != null ? previous : value;
+            return group.proposeAsync(var, proposed).thenApply(chosen -> {
+                slot.migrated.add(var);
+                return chosen;
+            });
+        });
+    }
+
+    @Override
+    public CompletableFuture<Object> readAsync(Object var) {
+        Slot slot = this.slots[slotOf(var)];
+        CompletableFuture<Object> current = this.groups.get(slot.group).readAsync(var);
+        if (slot.previousGroups.isEmpty() || slot.migrated.contains(var)) {
+            return current;
+        }
+        return current.thenCompose(chosen -> chosen != null ? CompletableFuture.completedFuture(chosen)
+                : readPrevious(slot, 0, var));
+    }
+
+    private CompletableFuture<Object> readPrevious(Slot slot, int index, Object var) {
+        if (index == slot.previousGroups.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return this.groups.get(slot.previousGroups.get(index)).readAsync(var).thenCompose(
+                chosen -> chosen != null ? CompletableFuture.completedFuture(chosen)
+                        : readPrevious(slot, index + 1, var));
+    }
+
+    /**
+     * Moves a slot to another group once the proposals of its vars running through this facade finished, new ones
+     * wait for the move meanwhile
+     *
+     * @return a future completing once the slot moved
+     */
+    public synchronized CompletableFuture<Void> rebalance(int slot, int group) {
+        if (group < 0 || group >= this.groups.size()) {
+            throw new IllegalArgumentException("group should be in [0, " + this.groups.size() + "), but is " + group);
+        }
+        Slot old = this.slots[slot];
+        if (old.isMoving()) {
+            return old.moved.thenCompose(v -> rebalance(slot, group));
+        }
+        if (old.group == group) {
+            return CompletableFuture.completedFuture(null);
+        }
+        List<Integer> previousGroups = new ArrayList<>(old.previousGroups.size() + 1);
+        previousGroups.add(old.group);
+        for (Integer previous : old.previousGroups) {
+            if (previous != group && !previousGroups.contains(previous)) {
+                previousGroups.add(previous);
+            }
+        }
+        Slot moving = new Slot(group, Collections.unmodifiableList(previousGroups));
+        old.freeze().thenRun(() -> install(slot, old, moving));
+        return old.moved;
+    }
+
+    private synchronized void install(int slot, Slot old, Slot moving) {
+        Slot[] slots = this.slots.clone();
+        slots[slot] = moving;
+        this.slots = slots;
+        LOG.info("move slot [{}] from group [{}] to group [{}]", slot, old.group, moving.group);
+        old.moved.complete(null);
+    }
+
+    public int slotOf(Object var) {
+        int h = var.hashCode();
+        return (h ^ (h >>> 16)) & this.mask;
+    }
+
+    public int groupOf(Object var) {
+        return this.slots[slotOf(var)].group;
+    }
+
+    public int getSlotNum() {
+        return this.mask + 1;
+    }
+
+    public int getGroupNum() {
+        return this.groups.size();
+    }
+
+    @Override
+    public void stop() {
+        for (AsyncProposer group : this.groups) {
+            group.stop();
+        }
+    }
+
+    /**
+     * The group a slot belongs to, the groups it belonged to before and which of its vars were carried over already.
+     * Once frozen for a move it takes no more proposals, and moved completes when the slot replacing it is in place
+     */
+    private static class Slot {
+
+        private final int                     group;
+        private final List<Integer>           previousGroups;
+        private final Set<Object>             migrated = ConcurrentHashMap.newKeySet();
+        private final CompletableFuture<Void> moved    = new CompletableFuture<>();
+        // guarded by this, the proposals running and the move waiting for them to finish
+        private int                           inFlight;
+        private CompletableFuture<Void>       drained;
+
+        Slot(int group, List<Integer> previousGroups) {
+            this.group = group;
+            this.previousGroups = previousGroups;
+        }
+
+        /**
+         * @return null when the proposal may run, else the future to wait for before routing it again
+         */
+        synchronized CompletableFuture<Void> enter() {
+            if (drained != null) {
+                return moved;
+            }
+            inFlight++;
+            return null;
+        }
+
+        void leave() {
+            CompletableFuture<Void> drained;
+            synchronized (this) {
+                if (--inFlight > 0 || this.drained == null) {
+                    return;
+                }
+                drained = this.drained;
+            }
+            drained.complete(null);
+        }
+
+        synchronized boolean isMoving() {
+            return drained != null;
+        }
+
+        /**
+         * @return a future completing once the proposals running finished
+         */
+        CompletableFuture<Void> freeze() {
+            CompletableFuture<Void> drained = new CompletableFuture<>();
+            boolean idle;
+            synchronized (this) {
+                this.drained = drained;
+                idle = inFlight == 0;
+            }
+            if (idle) {
+                drained.complete(null);
+            }
+            return drained;
+        }
+    }
+}
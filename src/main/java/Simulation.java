@@ -0,0 +1,260 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A scenario on a {@link Simulator}: proposers over acceptors, every proposer linked to every acceptor, and clients
+ * which each propose again as soon as their last proposal is decided. Reports the throughput, the latency percentiles
+ * and the rounds per decision, all in virtual time, so retry policies and quorums can be judged offline and a run
+ * replayed from its seed.
+ * <p>
+ * The proposers, links and nodes can be tuned before {@link #run}, and nodes crashed at virtual times of the run
+ */
+public class Simulation {
+
+    private final Simulator             simulator;
+    private final List<Simulator.Node>  nodes     = new ArrayList<>();
+    private final List<DefaultProposer> proposers = new ArrayList<>();
+    // the link from each proposer to each acceptor
+    private final Simulator.Link[][]    links;
+    private final DefaultMetrics        metrics   = new DefaultMetrics();
+    private int                         clients   = 1;
+    private boolean                     contended = false;
+    // the next var to propose, a later run never proposes a var again
+    private long                        nextVar   = 0L;
+
+    public Simulation(long seed, int acceptorNum, int proposerNum, Simulator.Latency latency) {
+        if (acceptorNum <= 0) {
+            throw new IllegalArgumentException("acceptorNum should be positive, but is " + acceptorNum);
+        }
+        if (proposerNum <= 0) {
+            throw new IllegalArgumentException("proposerNum should be positive, but is " + proposerNum);
+        }
+        this.simulator = new Simulator(seed);
+        for (int a = 0; a < acceptorNum; a++) {
+            DefaultAcceptor acceptor = new DefaultAcceptor("acceptor_" + a);
+            acceptor.setClock(simulator);
+            nodes.add(simulator.node(acceptor));
+        }
+        this.links = new Simulator.Link[proposerNum][acceptorNum];
+        for (int p = 0; p < proposerNum; p++) {
+            for (int a = 0; a < acceptorNum; a++) {
+                links[p][a] = simulator.link(nodes.get(a), latency, 0.0);
+            }
+            DefaultProposer proposer = new DefaultProposer(Arrays.asList(links[p]), p, proposerNum);
+            proposer.setClock(simulator);
+            proposer.setScheduler(simulator);
+            proposer.setMetrics(metrics);
+            proposer.setRetryPolicy(new ExponentialBackoff(1, 100, TimeUnit.MILLISECONDS, 100,
+                    simulator.getRandom()));
+            proposers.add(proposer);
+        }
+    }
+
+    public Simulator getSimulator() {
+        return simulator;
+    }
+
+    public List<Simulator.Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    public List<DefaultProposer> getProposers() {
+        return Collections.unmodifiableList(proposers);
+    }
+
+    public Simulator.Link getLink(int proposer, int acceptor) {
+        return links[proposer][acceptor];
+    }
+
+    public DefaultMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Loses each message on every link with the given chance
+     */
+    public void setLossRate(double lossRate) {
+        for (Simulator.Link[] row : links) {
+            for (Simulator.Link link : row) {
+                link.setLossRate(lossRate);
+            }
+        }
+    }
+
+    /**
+     * The clients proposing at once, spread over the proposers by client number
+     */
+    public void setClients(int clients) {
+        if (clients <= 0) {
+            throw new IllegalArgumentException("clients should be positive, but is " + clients);
+        }
+        this.clients = clients;
+    }
+
+    /**
+     * Whether all clients propose for the same var, the next one once it is decided, as proposers appending to one
+     * log do, rather than each for new vars of its own
+     */
+    public void setContended(boolean contended) {
+        this.contended = contended;
+    }
+
+    /**
+     * Runs until the given decisions were made, or the virtual time is up
+     */
+    public Report run(int decisions, long timeout, TimeUnit unit) {
+        if (decisions <= 0) {
+            throw new IllegalArgumentException("decisions should be positive, but is " + decisions);
+        }
+        final Run run = new Run(decisions);
+        final long wallStart = System.nanoTime();
+        for (int c = 0; c < clients && run.issued < decisions; c++) {
+            run.propose(c);
+        }
+        simulator.runUntil(() -> run.decided + run.failed >= decisions, timeout, unit);
+        return run.report(System.nanoTime() - wallStart);
+    }
+
+    private class Run {
+
+        private final int                             target;
+        private final long                            start   = simulator.nanoTime();
+        private final DefaultMetrics.DefaultHistogram latency = new DefaultMetrics.DefaultHistogram();
+        // the rounds recorded before the run
+        private final long                            roundsCount;
+        private final double                          roundsSum;
+        private int                                   issued;
+        private int                                   decided;
+        private int                                   failed;
+
+        Run(int target) {
+            this.target = target;
+            this.roundsCount = roundsCount();
+            this.roundsSum = roundsSum();
+        }
+
+        void propose(final int client) {
+            if (issued >= target) {
+                return;
+            }
+            issued++;
+            final long var = contended ? nextVar : nextVar++;
+            final long begin = simulator.nanoTime();
+            proposers.get(client % proposers.size()).proposeAsync(var, client).whenComplete((chosen, e) -> {
+                if (e == null) {
+                    decided++;
+                    latency.record(simulator.nanoTime() - begin);
+                    if (contended && var == nextVar) {
+                        nextVar++;
+                    }
+                } else {
+                    failed++;
+                }
+                propose(client);
+            });
+        }
+
+        Report report(long wallNanos) {
+            long count = roundsCount() - roundsCount;
+            double roundsPerDecision = count == 0 ? 0 : (roundsSum() - roundsSum) / count;
+            return new Report(decided, failed, simulator.nanoTime() - start, wallNanos, latency, roundsPerDecision);
+        }
+
+        private long roundsCount() {
+            long count = 0;
+            for (int p = 0; p < proposers.size(); p++) {
+                count += rounds(p).getCount();
+            }
+            return count;
+        }
+
+        private double roundsSum() {
+            double sum = 0;
+            for (int p = 0; p < proposers.size(); p++) {
+                sum += rounds(p).getMean() * rounds(p).getCount();
+            }
+            return sum;
+        }
+
+        private DefaultMetrics.DefaultHistogram rounds(int proposer) {
+            return metrics.histogram("proposer_" + proposer + ".rounds");
+        }
+    }
+
+    /**
+     * What a run achieved, in virtual time but for the wall time it took to simulate
+     */
+    public static class Report {
+
+        private final int                             decisions;
+        private final int                             failures;
+        private final long                            virtualNanos;
+        private final long                            wallNanos;
+        private final DefaultMetrics.DefaultHistogram latency;
+        private final double                          roundsPerDecision;
+
+        Report(int decisions, int failures, long virtualNanos, long wallNanos,
+               DefaultMetrics.DefaultHistogram latency, double roundsPerDecision) {
+            this.decisions = decisions;
+            this.failures = failures;
+            this.virtualNanos = virtualNanos;
+            this.wallNanos = wallNanos;
+            this.latency = latency;
+            this.roundsPerDecision = roundsPerDecision;
+        }
+
+        public int getDecisions() {
+            return decisions;
+        }
+
+        /**
+         * Proposals which timed out, gave up or were rejected for overload
+         */
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getVirtualNanos() {
+            return virtualNanos;
+        }
+
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        /**
+         * @return decisions per virtual second
+         */
+        public double getThroughput() {
+            return virtualNanos == 0 ? 0 : decisions * 1e9 / virtualNanos;
+        }
+
+        /**
+         * @return the virtual nanoseconds from proposing to the decision
+         */
+        public DefaultMetrics.DefaultHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the mean rounds of the proposals which made a decision, joined proposals not counted
+         */
+        public double getRoundsPerDecision() {
+            return roundsPerDecision;
+        }
+
+        /**
+         * Leaves out the wall time, so the same seed prints the same report
+         */
+        @Override
+        public String toString() {
+            return String.format("decisions=%d failures=%d virtual=%.3fs throughput=%.0f/s latency_us p50=%d p90=%d"
+                    + " p99=%d max=%d rounds=%.2f", decisions, failures, virtualNanos / 1e9, getThroughput(),
+                    latency.getValueAtPercentile(50) / 1000, latency.getValueAtPercentile(90) / 1000,
+                    latency.getValueAtPercentile(99) / 1000, latency.getMax() / 1000, roundsPerDecision);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import util.Clock;
+import util.Scheduler;
+
+/**
+ * Runs proposers and acceptors on one thread in virtual time. Every call from a proposer to an acceptor, and every
+ * response, is an event delivered after the latency of its link unless the link loses it. Events run in the order of
+ * their time and, at the same time, of their scheduling, and all randomness comes from one seeded Random, so a seed
+ * replays a run exactly however fast the machine is.
+ * <p>
+ * Proposers take the simulator as their {@link Clock} and {@link Scheduler} and their acceptors through
+ * {@link #link}. A crashed acceptor drops the calls reaching it and keeps its state, as a durable one does once
+ * restarted
+ */
+public class Simulator implements Clock, Scheduler {
+
+    private final PriorityQueue<Event> events   = new PriorityQueue<>();
+    private final Random               random;
+    private long                       now      = 0L;
+    private long                       sequence = 0L;
+
+    public Simulator(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Where everything in the run draws its randomness from, retry policies included
+     */
+    public Random getRandom() {
+        return random;
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public Future<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        events.add(new Event(now + Math.max(0L, unit.toNanos(delay)), sequence++, future));
+        return future;
+    }
+
+    /**
+     * Runs events until the condition holds, no event is left or the virtual time is up
+     *
+     * @return whether the condition holds
+     * @throws IllegalStateException when an event fails
+     */
+    public boolean runUntil(BooleanSupplier condition, long timeout, TimeUnit unit) {
+        final long timeoutNanos = unit.toNanos(timeout);
+        final long deadline = timeoutNanos > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeoutNanos;
+        while (!condition.getAsBoolean()) {
+            Event event = events.peek();
+            if (event == null || event.time > deadline) {
+                return false;
+            }
+            events.poll();
+            now = event.time;
+            event.task.run();
+            if (event.task.isCancelled()) {
+                continue;
+            }
+            try {
+                event.task.get();
+            } catch (ExecutionException | InterruptedException e) {
+                throw new IllegalStateException("event failed at " + now + " ns", e.getCause());
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the acceptor as a node of the simulated network, which proposers reach through links
+     */
+    public Node node(Acceptor acceptor) {
+        return new Node(acceptor);
+    }
+
+    /**
+     * @param lossRate in [0, 1], the chance of losing each call and each response
+     */
+    public Link link(Node node, Latency latency, double lossRate) {
+        Link link = new Link(node);
+        link.setLatency(latency);
+        link.setLossRate(lossRate);
+        return link;
+    }
+
+    /**
+     * How long a message takes over a link, drawn from the random of the run
+     */
+    public interface Latency {
+
+        long nanos(Random random);
+
+        static Latency constant(long latency, TimeUnit unit) {
+            final long nanos = unit.toNanos(latency);
+            return random -> nanos;
+        }
+
+        static Latency uniform(long min, long max, TimeUnit unit) {
+            if (max < min) {
+                throw new IllegalArgumentException("max should be at least " + min + ", but is " + max);
+            }
+            final long minNanos = unit.toNanos(min);
+            final long range = unit.toNanos(max) - minNanos + 1;
+            return random -> minNanos + Math.floorMod(random.nextLong(), range);
+        }
+
+        /**
+         * A floor plus an exponential tail, the usual shape of network latency
+         *
+         * @param mean of the tail above the floor
+         */
+        static Latency exponential(long min, long mean, TimeUnit unit) {
+            final long minNanos = unit.toNanos(min);
+            final double meanNanos = unit.toNanos(mean);
+            return random -> minNanos + (long) (-meanNanos * Math.log(1 - random.nextDouble()));
+        }
+    }
+
+    public class Node {
+
+        private final Acceptor acceptor;
+        private boolean        up = true;
+
+        Node(Acceptor acceptor) {
+            this.acceptor = acceptor;
+        }
+
+        public Acceptor getAcceptor() {
+            return acceptor;
+        }
+
+        public boolean isUp() {
+            return up;
+        }
+
+        public void crash() {
+            up = false;
+        }
+
+        public void restart() {
+            up = true;
+        }
+
+        /**
+         * Crashes the node after the delay, in virtual time, and restarts it after the downtime
+         */
+        public void crash(long delay, long downtime, TimeUnit unit) {
+            schedule(this::crash, delay, unit);
+            schedule(this::restart, delay + downtime, unit);
+        }
+    }
+
+    /**
+     * A node as one proposer sees it. Each call and each response takes its own latency, so they may overtake each
+     * other, and is lost on its own
+     */
+    public class Link implements AsyncAcceptor {
+
+        private final Node node;
+        private Latency    latency;
+        private double     lossRate;
+
+        Link(Node node) {
+            this.node = node;
+        }
+
+        public Node getNode() {
+            return node;
+        }
+
+        public void setLatency(Latency latency) {
+            this.latency = latency;
+        }
+
+        public void setLossRate(double lossRate) {
+            if (lossRate < 0 || lossRate > 1) {
+                throw new IllegalArgumentException("lossRate should be in [0, 1], but is " + lossRate);
+            }
+            this.lossRate = lossRate;
+        }
+
+        @Override
+        public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+            return send(AcceptorRequest.prepare(epoch, var));
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value) {
+            return send(AcceptorRequest.accept(epoch, var, value));
+        }
+
+        @Override
+        public CompletableFuture<Promise> prepareAllAsync(Long epoch) {
+            return send(AcceptorRequest.prepareAll(epoch));
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptWithoutPrepareAsync(Long epoch, Object var, Object value) {
+            return send(AcceptorRequest.acceptWithoutPrepare(epoch, var, value));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T extends NAKAble> CompletableFuture<T> send(AcceptorRequest request) {
+            CompletableFuture<T> response = new CompletableFuture<>();
+            deliver(() -> {
+                // a cancelled call was still sent, the acceptor handles it all the same
+                if (node.up) {
+                    T result = (T) request.callOn(node.acceptor);
+                    deliver(() -> response.complete(result));
+                }
+            });
+            return response;
+        }
+
+        private void deliver(Runnable message) {
+            if (lossRate > 0 && random.nextDouble() < lossRate) {
+                return;
+            }
+            schedule(message, latency.nanos(random), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static final class Event implements Comparable<Event> {
+
+        private final long             time;
+        private final long             sequence;
+        private final FutureTask<Void> task;
+
+        Event(long time, long sequence, FutureTask<Void> task) {
+            this.time = time;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A binary ring buffer of protocol events, in place of a log line per message. Recording an event is a few stores
+ * into a preallocated array and nothing at all while tracing is off, so it may stay in the critical section. The
+ * newest events are read back with {@link #dump()} on demand, older ones are overwritten.
+ * <p>
+ * An event is [time, event and source, epoch, other epoch, hash of the var], the var itself is not kept so tracing
+ * never holds on to user objects
+ */
+public class Tracer {
+
+    /**
+     * Shared by every proposer and acceptor not given one of their own, off until enabled
+     */
+    public static final Tracer DEFAULT = new Tracer(1 << 16);
+
+    // longs per event: sequence + 1 once written, time, event << 32 | source, epoch, other epoch, var hash
+    private static final int STRIDE = 8;
+
+    private final AtomicLongArray slots;
+    private final int             mask;
+    private final AtomicLong      sequence = new AtomicLong();
+    private volatile boolean      enabled  = false;
+    private final List<String>    sources  = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> sourceIds = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity events kept, a power of two
+     */
+    public Tracer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity should be a power of two, but is " + capacity);
+        }
+        this.slots = new AtomicLongArray(capacity * STRIDE);
+        this.mask = capacity - 1;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return the id events of the named proposer or acceptor are recorded with
+     */
+    public int source(String name) {
+        return sourceIds.computeIfAbsent(name, key -> {
+            synchronized (sources) {
+                sources.add(key);
+                return sources.size() - 1;
+            }
+        });
+    }
+
+    public void record(Event event, int source, long epoch, long otherEpoch, Object var) {
+        if (!enabled) {
+            return;
+        }
+        long seq = sequence.getAndIncrement();
+        int base = (int) (seq & mask) * STRIDE;
+        // a reader seeing the marker of an older event or none knows the slot is being written, the fence keeps the
+        // payload stores below from moving above the cleared marker
+        slots.setOpaque(base, 0L);
+        VarHandle.releaseFence();
+        slots.setOpaque(base + 1, System.nanoTime());
+        slots.setOpaque(base + 2, ((long) event.ordinal() << 32) | source);
+        slots.setOpaque(base + 3, epoch);
+        slots.setOpaque(base + 4, otherEpoch);
+        slots.setOpaque(base + 5, var == null ? 0L : var.hashCode());
+        slots.setRelease(base, seq + 1);
+    }
+
+    /**
+     * @return the events still in the buffer, oldest first, as [time ns] event source epoch other var=hash
+     */
+    public List<String> dump() {
+        Event[] events = Event.values();
+        long end = sequence.get();
+        long start = Math.max(0L, end - (mask + 1));
+        List<String> lines = new ArrayList<>((int) (end - start));
+        for (long seq = start; seq < end; seq++) {
+            int base = (int) (seq & mask) * STRIDE;
+            if (slots.getAcquire(base) != seq + 1) {
+                continue;
+            }
+            long time = slots.getOpaque(base + 1);
+            long eventAndSource = slots.getOpaque(base + 2);
+            long epoch = slots.getOpaque(base + 3);
+            long otherEpoch = slots.getOpaque(base + 4);
+            long varHash = slots.getOpaque(base + 5);
+            // overwritten while we read it, the fence keeps the payload loads above from moving below the check
+            VarHandle.acquireFence();
+            if (slots.getOpaque(base) != seq + 1) {
+                continue;
+            }
+            int source = (int) eventAndSource;
+            lines.add(String.format("[%d] %s %s %d %d var=%08x", time, events[(int) (eventAndSource >>> 32)],
+                    source < sources.size() ? sources.get(source) : "source_" + source, epoch, otherEpoch,
+                    (int) varHash));
+        }
+        return lines;
+    }
+
+    /**
+     * What happened, the meaning of the other epoch is given for each
+     */
+    public enum Event {
+        /** the epoch the var was promised before */
+        PREPARE_ACK,
+        /** the greater epoch promised */
+        PREPARE_NAK,
+        /** the leader epoch before */
+        PREPARE_ALL_ACK,
+        /** the greater epoch promised */
+        PREPARE_ALL_NAK,
+        /** the epoch the var was promised before */
+        ACCEPT_ACK,
+        /** the greater epoch promised */
+        ACCEPT_NAK,
+        /** none */
+        ACCEPT_WITHOUT_PREPARE_ACK,
+        /** the epoch promised */
+        ACCEPT_WITHOUT_PREPARE_NAK,
+        /** the round, a proposer sends prepare */
+        PROPOSE_PREPARE,
+        /** the round, a proposer sends accept */
+        PROPOSE_ACCEPT,
+        /** none, the leader sends acceptWithoutPrepare */
+        PROPOSE_LEADER_ACCEPT,
+        /** the round, the value is chosen */
+        PROPOSE_CHOSEN,
+        /** the greater epoch the round lost to */
+        PROPOSE_LOST,
+        /** the id of the proposer the proposal went to */
+        PROPOSE_FORWARD,
+        /** none, the proposer won phase 1 for every var */
+        LEADER_ELECTED,
+        /** the greater epoch, if known, the proposer lost phase 1 for every var */
+        LEADER_LOST
+    }
+}
@@ -0,0 +1,51 @@
+import java.io.Closeable;
+
+/**
+ * Where a {@link DefaultAcceptor} keeps the promise and the accepted value of every var, and the leader epoch. The
+ * acceptor only touches a var under its stripe lock, so a store only has to cope with different vars changing at the
+ * same time
+ */
+public interface VarStore extends Closeable {
+
+    long NO_EPOCH = -1L;
+
+    /**
+     * Copies the state of the var into the given state
+     *
+     * @return false if nothing was promised for the var yet
+     */
+    boolean read(Object var, State state);
+
+    void promise(Object var, long epoch);
+
+    /**
+     * Sets the accepted epoch and value, the promise is left as it is
+     */
+    void accept(Object var, long epoch, Object value);
+
+    long leaderEpoch();
+
+    void leader(long epoch);
+
+    /**
+     * Visits every var with its epochs, vars added meanwhile may or may not be visited
+     */
+    void forEach(Visitor visitor);
+
+    int size();
+
+    interface Visitor {
+
+        void visit(Object var, long promisedEpoch, long acceptedEpoch);
+    }
+
+    /**
+     * The promise and the accepted value of one var
+     */
+    class State {
+
+        long   promisedEpoch = NO_EPOCH;
+        long   acceptedEpoch = NO_EPOCH;
+        Object value;
+    }
+}
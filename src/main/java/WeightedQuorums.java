@@ -0,0 +1,91 @@
+import java.util.Arrays;
+
+/**
+ * Acceptors with a weight each, a set is a quorum of a phase once its weight reaches the weight of the phase. The
+ * weights of the two phases together exceed the total weight, so their quorums always intersect. With every weight 1
+ * these are the quorums of Flexible Paxos, and with both phases at a majority the quorums of classic Paxos
+ */
+public class WeightedQuorums implements QuorumSystem {
+
+    private final int[] weights;
+    private final int   phase1Weight;
+    private final int   phase2Weight;
+
+    public WeightedQuorums(int[] weights, int phase1Weight, int phase2Weight) {
+        if (weights.length == 0 || weights.length > MAX_ACCEPTORS) {
+            throw new IllegalArgumentException("acceptors should be between 1 and " + MAX_ACCEPTORS + ", but are "
+                    + weights.length);
+        }
+        int totalWeight = 0;
+        for (int weight : weights) {
+            if (weight <= 0) {
+                throw new IllegalArgumentException("weight should be positive, but is " + weight);
+            }
+            totalWeight += weight;
+        }
+        if (phase1Weight <= 0 || phase1Weight > totalWeight) {
+            throw new IllegalArgumentException("phase1Weight should be between 1 and " + totalWeight + ", but is "
+                    + phase1Weight);
+        }
+        if (phase2Weight <= 0 || phase2Weight > totalWeight) {
+            throw new IllegalArgumentException("phase2Weight should be between 1 and " + totalWeight + ", but is "
+                    + phase2Weight);
+        }
+        if (phase1Weight + phase2Weight <= totalWeight) {
+            throw new IllegalArgumentException("phase1Weight + phase2Weight should exceed the total weight "
+                    + totalWeight + ", but is " + (phase1Weight + phase2Weight));
+        }
+        this.weights = weights.clone();
+        this.phase1Weight = phase1Weight;
+        this.phase2Weight = phase2Weight;
+    }
+
+    /**
+     * A majority of the acceptors in both phases
+     */
+    public static WeightedQuorums majority(int acceptorNum) {
+        return flexible(acceptorNum, acceptorNum / 2 + 1, acceptorNum / 2 + 1);
+    }
+
+    /**
+     * Any phase1 acceptors in phase 1 and any phase2 acceptors in phase 2, phase1 + phase2 > acceptorNum
+     */
+    public static WeightedQuorums flexible(int acceptorNum, int phase1, int phase2) {
+        if (acceptorNum <= 0) {
+            throw new IllegalArgumentException("acceptorNum should be positive, but is " + acceptorNum);
+        }
+        int[] weights = new int[acceptorNum];
+        Arrays.fill(weights, 1);
+        return new WeightedQuorums(weights, phase1, phase2);
+    }
+
+    @Override
+    public int getAcceptorNum() {
+        return weights.length;
+    }
+
+    @Override
+    public boolean isPhase1Quorum(long acceptors) {
+        return weightOf(acceptors) >= phase1Weight;
+    }
+
+    @Override
+    public boolean isPhase2Quorum(long acceptors) {
+        return weightOf(acceptors) >= phase2Weight;
+    }
+
+    private int weightOf(long acceptors) {
+        int weight = 0;
+        while (acceptors != 0) {
+            weight += weights[Long.numberOfTrailingZeros(acceptors)];
+            acceptors &= acceptors - 1;
+        }
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "WeightedQuorums [weights=" + Arrays.toString(weights) + ", phase1Weight=" + phase1Weight
+                + ", phase2Weight=" + phase2Weight + "]";
+    }
+}
@@ -0,0 +1,335 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * One selector thread serving the connections of an {@link AcceptorServer} or a {@link RemoteAcceptor}. It only moves
+ * frames, what they mean is up to the {@link FrameHandler}. Any thread may send, a frame is written right away and only
+ * left to the selector when the socket buffer is full
+ */
+class WireLoop implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(WireLoop.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final Selector            selector;
+    private final Thread              thread;
+    private final Queue<Runnable>     tasks = new ConcurrentLinkedQueue<>();
+    private volatile boolean          closed = false;
+
+    WireLoop(String name) throws IOException {
+        this.selector = Selector.open();
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Accepts connections on the server channel, every frame they bring goes to the handler
+     */
+    void listen(ServerSocketChannel server, FrameHandler handler) throws IOException {
+        server.configureBlocking(false);
+        execute(() -> {
+            try {
+                server.register(selector, SelectionKey.OP_ACCEPT, handler);
+            } catch (IOException e) {
+                LOG.error("fail to listen on " + server, e);
+            }
+        });
+    }
+
+    /**
+     * Takes over a connected channel
+     */
+    Connection register(SocketChannel channel, FrameHandler handler) throws IOException {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel, handler, null);
+        execute(() -> {
+            try {
+                connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            } catch (IOException e) {
+                connection.close(e);
+            }
+        });
+        return connection;
+    }
+
+    /**
+     * Connects to the address without blocking, the connection is usable once {@link Connection#opened} completes
+     */
+    Connection connect(InetSocketAddress address, FrameHandler handler) throws IOException {
+        SocketChannel channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel, handler, new CompletableFuture<>());
+        execute(() -> {
+            try {
+                if (channel.connect(address)) {
+                    connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+                    connection.opened.complete(connection);
+                } else {
+                    connection.key = channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                }
+            } catch (IOException e) {
+                connection.close(e);
+            }
+        });
+        return connection;
+    }
+
+    private void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    private void run() {
+        while (!closed) {
+            try {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.error("wire loop " + thread.getName() + " task failed", e);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        handle(key);
+                    } catch (IOException | RuntimeException e) {
+                        // only the connection at fault is closed, the others keep going
+                        if (key.attachment() instanceof Connection) {
+                            ((Connection) key.attachment()).close(e instanceof IOException ? (IOException) e
+                                    : new IOException(e));
+                        } else {
+                            LOG.error("fail to accept a connection on " + key.channel(), e);
+                        }
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                LOG.error("wire loop " + thread.getName() + " failed", e);
+            }
+        }
+    }
+
+    private void handle(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        if (key.isAcceptable()) {
+            SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+            if (channel != null) {
+                Connection connection = register(channel, (FrameHandler) key.attachment());
+                LOG.info("accepted connection from [{}]", channel.getRemoteAddress());
+                connection.handler.onOpen(connection);
+            }
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        if (key.isConnectable()) {
+            if (connection.channel.finishConnect()) {
+                key.interestOps(SelectionKey.OP_READ);
+                connection.opened.complete(connection);
+            }
+            return;
+        }
+        if (key.isReadable()) {
+            connection.read();
+        }
+        if (key.isValid() && key.isWritable() && connection.flush()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                ((Connection) key.attachment()).close(null);
+            } else {
+                key.channel().close();
+            }
+        }
+        selector.close();
+    }
+
+    /**
+     * Receives the frames of the connections of a loop, on the selector thread
+     */
+    interface FrameHandler {
+
+        default void onOpen(Connection connection) {
+        }
+
+        /**
+         * @param frame the frame without its length
+         */
+        void onFrame(Connection connection, byte[] frame);
+
+        /**
+         * @param cause null when the connection was closed on purpose or by the peer
+         */
+        void onClose(Connection connection, IOException cause);
+    }
+
+    class Connection {
+
+        private final SocketChannel     channel;
+        private final FrameHandler      handler;
+        private final Queue<ByteBuffer> writes = new ArrayDeque<>();
+        private final CompletableFuture<Connection> opened;
+        private ByteBuffer              readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private volatile SelectionKey   key;
+        private volatile boolean        closed = false;
+
+        private Connection(SocketChannel channel, FrameHandler handler, CompletableFuture<Connection> opened) {
+            this.channel = channel;
+            this.handler = handler;
+            this.opened = opened != null ? opened : CompletableFuture.completedFuture(this);
+        }
+
+        /**
+         * Completes, on the selector thread, once connected, or fails when the connection is closed before
+         */
+        CompletableFuture<Connection> opened() {
+            return opened;
+        }
+
+        /**
+         * Writes the frame, or queues it behind the frames the socket did not take yet
+         */
+        void send(ByteBuffer frame) throws IOException {
+            if (closed) {
+                throw new IOException("connection to " + channel.getRemoteAddress() + " was closed");
+            }
+            boolean flushed;
+            synchronized (writes) {
+                writes.add(frame);
+                if (writes.size() > 1) {
+                    return;
+                }
+                flushed = flush();
+            }
+            if (!flushed) {
+                execute(() -> {
+                    SelectionKey key = this.key;
+                    if (key != null && key.isValid()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                });
+            }
+        }
+
+        /**
+         * @return whether every queued frame was written
+         */
+        private boolean flush() throws IOException {
+            synchronized (writes) {
+                ByteBuffer head;
+                while ((head = writes.peek()) != null) {
+                    channel.write(head);
+                    if (head.hasRemaining()) {
+                        return false;
+                    }
+                    writes.poll();
+                }
+                return true;
+            }
+        }
+
+        private void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close(null);
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= WireProtocol.LENGTH_SIZE) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > WireProtocol.MAX_FRAME_SIZE) {
+                    throw new IOException("bad frame length " + length + " from " + channel.getRemoteAddress());
+                }
+                if (readBuffer.remaining() < WireProtocol.LENGTH_SIZE + length) {
+                    break;
+                }
+                readBuffer.position(readBuffer.position() + WireProtocol.LENGTH_SIZE);
+                byte[] frame = new byte[length];
+                readBuffer.get(frame);
+                handler.onFrame(this, frame);
+            }
+            if (readBuffer.capacity() > READ_BUFFER_SIZE && readBuffer.remaining() <= READ_BUFFER_SIZE) {
+                // back to the usual size once a big frame is through
+                readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE).put(readBuffer);
+            } else {
+                readBuffer.compact();
+            }
+            if (!readBuffer.hasRemaining()) {
+                // full with the start of a bigger frame, the buffer doubles as its bytes arrive rather than taking
+                // the length the peer claims up front
+                int frameSize = WireProtocol.LENGTH_SIZE + readBuffer.getInt(0);
+                readBuffer.flip();
+                readBuffer = ByteBuffer.allocate((int) Math.min(2L * readBuffer.capacity(), frameSize))
+                        .put(readBuffer);
+            }
+        }
+
+        /**
+         * @return the bytes the read buffer holds room for
+         */
+        int readBufferCapacity() {
+            return readBuffer.capacity();
+        }
+
+        boolean isClosed() {
+            return closed;
+        }
+
+        void close(IOException cause) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            opened.completeExceptionally(cause != null ? cause : new IOException("connection was closed"));
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("fail to close " + channel, e);
+            }
+            handler.onClose(this, cause);
+        }
+    }
+}
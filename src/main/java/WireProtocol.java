@@ -0,0 +1,209 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import util.ObjectCodec;
+
+/**
+ * The binary protocol between {@link RemoteAcceptor} and {@link AcceptorServer}. Every frame is [int length][byte
+ * type][varint request id] followed by the body, epochs are varints and vars and values are encoded by
+ * {@link ObjectCodec}, so a prepare of a short string var costs about a dozen bytes on the wire.
+ * <p>
+ * Requests: [epoch], [var] unless PREPARE_ALL, [value] for the accepts.<br>
+ * PROMISE: [flags][pre epoch][accepted epoch][var][value][varint count][accepted vars], absent epochs are left out.<br>
+ * ACCEPTED: [flags][epoch][var][value].<br>
+ * ERROR: [message]<br>
+ * BATCH: [varint count] and that many whole frames, for calls or responses of different vars going the same way.
+ * <p>
+ * A frame is at most {@link #MAX_FRAME_SIZE} bytes, and no count or length read may be more than the bytes left in
+ * the frame, so a broken or hostile peer can not make the reader allocate more than twice what it sent
+ */
+abstract class WireProtocol {
+
+    static final byte PREPARE                = 1;
+    static final byte ACCEPT                 = 2;
+    static final byte PREPARE_ALL            = 3;
+    static final byte ACCEPT_WITHOUT_PREPARE = 4;
+    static final byte PROMISE                = 5;
+    static final byte ACCEPTED               = 6;
+    static final byte ERROR                  = 7;
+    static final byte BATCH                  = 8;
+
+    static final int  LENGTH_SIZE            = 4;
+    static final int  MAX_FRAME_SIZE         = 4 * ObjectCodec.MAX_BYTES;
+
+    private static final int NAK            = 1;
+    private static final int HAS_EPOCH      = 2;
+    private static final int HAS_ACCEPTED   = 4;
+
+    static ByteBuffer request(byte type, long id, long epoch, Object var, Object value) throws IOException {
+        Frame frame = new Frame(type, id);
+        ObjectCodec.writeVarLong(frame.out, epoch);
+        if (type != PREPARE_ALL) {
+            ObjectCodec.write(frame.out, var);
+        }
+        if (type == ACCEPT || type == ACCEPT_WITHOUT_PREPARE) {
+            ObjectCodec.write(frame.out, value);
+        }
+        return frame.toBuffer();
+    }
+
+    static AcceptorRequest readRequest(byte type, DataInputStream in) throws IOException {
+        long epoch = ObjectCodec.readVarLong(in);
+        switch (type) {
+            case PREPARE:
+                return AcceptorRequest.prepare(epoch, ObjectCodec.read(in));
+            case ACCEPT:
+                return AcceptorRequest.accept(epoch, ObjectCodec.read(in), ObjectCodec.read(in));
+            case PREPARE_ALL:
+                return AcceptorRequest.prepareAll(epoch);
+            case ACCEPT_WITHOUT_PREPARE:
+                return AcceptorRequest.acceptWithoutPrepare(epoch, ObjectCodec.read(in), ObjectCodec.read(in));
+            default:
+                throw new IOException("unknown request type " + type);
+        }
+    }
+
+    static ByteBuffer response(long id, NAKAble response) throws IOException {
+        return response instanceof Promise ? promise(id, (Promise) response) : accepted(id, (Accepted) response);
+    }
+
+    static ByteBuffer promise(long id, Promise promise) throws IOException {
+        Frame frame = new Frame(PROMISE, id);
+        long preEpoch = promise.getPreEpochAsLong();
+        long acceptedEpoch = promise.getAcceptedEpochAsLong();
+        int flags = (promise.isNAK() ? NAK : 0) | (preEpoch != VarStore.NO_EPOCH ? HAS_EPOCH : 0)
+                | (acceptedEpoch != VarStore.NO_EPOCH ? HAS_ACCEPTED : 0);
+        frame.out.writeByte(flags);
+        if (preEpoch != VarStore.NO_EPOCH) {
+            ObjectCodec.writeVarLong(frame.out, preEpoch);
+        }
+        if (acceptedEpoch != VarStore.NO_EPOCH) {
+            ObjectCodec.writeVarLong(frame.out, acceptedEpoch);
+        }
+        ObjectCodec.write(frame.out, promise.getVar());
+        ObjectCodec.write(frame.out, promise.getValue());
+        Collection<Object> acceptedVars = promise.getAcceptedVars();
+        ObjectCodec.writeVarLong(frame.out, acceptedVars.size());
+        for (Object var : acceptedVars) {
+            ObjectCodec.write(frame.out, var);
+        }
+        return frame.toBuffer();
+    }
+
+    static ByteBuffer accepted(long id, Accepted accepted) throws IOException {
+        Frame frame = new Frame(ACCEPTED, id);
+        long epoch = accepted.getEpochAsLong();
+        frame.out.writeByte((accepted.isNAK() ? NAK : 0) | (epoch != VarStore.NO_EPOCH ? HAS_EPOCH : 0));
+        if (epoch != VarStore.NO_EPOCH) {
+            ObjectCodec.writeVarLong(frame.out, epoch);
+        }
+        ObjectCodec.write(frame.out, accepted.getVar());
+        ObjectCodec.write(frame.out, accepted.getValue());
+        return frame.toBuffer();
+    }
+
+    static ByteBuffer error(long id, String message) throws IOException {
+        Frame frame = new Frame(ERROR, id);
+        ObjectCodec.write(frame.out, message);
+        return frame.toBuffer();
+    }
+
+    static ByteBuffer batch(List<ByteBuffer> frames) throws IOException {
+        Frame frame = new Frame(BATCH, 0L);
+        ObjectCodec.writeVarLong(frame.out, frames.size());
+        for (ByteBuffer buffer : frames) {
+            frame.out.write(buffer.array(), buffer.position(), buffer.remaining());
+        }
+        return frame.toBuffer();
+    }
+
+    /**
+     * Reads the frames of a batch, after its type and id
+     *
+     * @return the frames without their length
+     */
+    static List<byte[]> readBatch(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<byte[]> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = in.readInt();
+            if (length < 0 || length > in.available()) {
+                throw new IOException("bad frame length " + length + " in batch");
+            }
+            byte[] frame = new byte[length];
+            in.readFully(frame);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * @param frame the frame without its length
+     */
+    static DataInputStream open(byte[] frame) {
+        return new DataInputStream(new ByteArrayInputStream(frame));
+    }
+
+    static Promise readPromise(DataInputStream in) throws IOException {
+        int flags = in.readByte();
+        long preEpoch = (flags & HAS_EPOCH) != 0 ? ObjectCodec.readVarLong(in) : VarStore.NO_EPOCH;
+        long acceptedEpoch = (flags & HAS_ACCEPTED) != 0 ? ObjectCodec.readVarLong(in) : VarStore.NO_EPOCH;
+        Object var = ObjectCodec.read(in);
+        Object value = ObjectCodec.read(in);
+        int count = readCount(in);
+        List<Object> acceptedVars = count == 0 ? Collections.emptyList() : new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            acceptedVars.add(ObjectCodec.read(in));
+        }
+        return new Promise(preEpoch, acceptedEpoch, var, value, (flags & NAK) != 0, acceptedVars);
+    }
+
+    /**
+     * Reads the count of the items which follow, each of them takes at least one byte
+     */
+    private static int readCount(DataInputStream in) throws IOException {
+        long count = ObjectCodec.readVarLong(in);
+        if (count < 0 || count > in.available()) {
+            throw new IOException("bad count " + count);
+        }
+        return (int) count;
+    }
+
+    static Accepted readAccepted(DataInputStream in) throws IOException {
+        int flags = in.readByte();
+        long epoch = (flags & HAS_EPOCH) != 0 ? ObjectCodec.readVarLong(in) : VarStore.NO_EPOCH;
+        Object var = ObjectCodec.read(in);
+        Object value = ObjectCodec.read(in);
+        return Accepted.create(epoch, var, value, (flags & NAK) != 0);
+    }
+
+    private static class Frame {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream      out   = new DataOutputStream(bytes);
+
+        Frame(byte type, long id) throws IOException {
+            out.writeInt(0);
+            out.writeByte(type);
+            ObjectCodec.writeVarLong(out, id);
+        }
+
+        ByteBuffer toBuffer() throws IOException {
+            if (bytes.size() - LENGTH_SIZE > MAX_FRAME_SIZE) {
+                throw new IOException("frame of " + (bytes.size() - LENGTH_SIZE) + " bytes is over the limit of "
+                        + MAX_FRAME_SIZE);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            buffer.putInt(0, buffer.remaining() - LENGTH_SIZE);
+            return buffer;
+        }
+    }
+}
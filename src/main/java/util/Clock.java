@@ -0,0 +1,16 @@
+package util;
+
+/**
+ * Where leases read the time, tests drive their own
+ *
+ * @since 1.0
+ */
+public interface Clock {
+
+    Clock SYSTEM = System::nanoTime;
+
+    /**
+     * @return a monotonic time in nanoseconds, only the difference of two readings means anything
+     */
+    long nanoTime();
+}
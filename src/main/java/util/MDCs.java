@@ -1,6 +0,0 @@
-package util;
-
-public abstract class MDCs {
-
-    public static final String MDC_NAME = "paxos_role";
-}
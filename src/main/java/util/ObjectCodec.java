@@ -0,0 +1,143 @@
+package util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding of vars and values: strings, numbers and byte arrays get a one byte tag and a varint
+ * length, anything else falls back to java serialization. The bytes may come from the network, so serialization only
+ * reads the classes its filter allows, and no length may be over {@link #MAX_BYTES}
+ *
+ * @since 1.0
+ */
+public abstract class ObjectCodec {
+
+    private static final byte NULL         = 0;
+    private static final byte STRING       = 1;
+    private static final byte LONG         = 2;
+    private static final byte INTEGER      = 3;
+    private static final byte BYTES        = 4;
+    private static final byte SERIALIZABLE = 5;
+
+    /**
+     * The most bytes of one string, byte array or serialized object
+     */
+    public static final int   MAX_BYTES    = 16 * 1024 * 1024;
+
+    private static final String DEFAULT_SERIAL_FILTER = "maxdepth=16;maxrefs=65536;maxbytes=" + MAX_BYTES
+            + ";maxarray=" + MAX_BYTES + ";Batch;java.lang.*;java.util.*;java.math.*;!*";
+
+    private static volatile ObjectInputFilter serialFilter = ObjectInputFilter.Config.createFilter(
+            DEFAULT_SERIAL_FILTER);
+
+    /**
+     * Sets the classes and limits of java serialization as an {@link ObjectInputFilter} pattern, by default only
+     * {@code Batch} and the classes of java.lang, java.util and java.math are read. A pattern should end with "!*"
+     * so any class it does not name is rejected
+     */
+    public static void setSerialFilter(String pattern) {
+        serialFilter = ObjectInputFilter.Config.createFilter(pattern);
+    }
+
+    public static void write(DataOutput out, Object o) throws IOException {
+        if (o == null) {
+            out.writeByte(NULL);
+        } else if (o instanceof String) {
+            out.writeByte(STRING);
+            writeBytes(out, ((String) o).getBytes(StandardCharsets.UTF_8));
+        } else if (o instanceof Long) {
+            out.writeByte(LONG);
+            writeVarLong(out, (Long) o);
+        } else if (o instanceof Integer) {
+            out.writeByte(INTEGER);
+            writeVarLong(out, (Integer) o);
+        } else if (o instanceof byte[]) {
+            out.writeByte(BYTES);
+            writeBytes(out, (byte[]) o);
+        } else if (o instanceof Serializable) {
+            out.writeByte(SERIALIZABLE);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(bytes)) {
+                objectOut.writeObject(o);
+            }
+            writeBytes(out, bytes.toByteArray());
+        } else {
+            throw new IOException("can not encode " + o.getClass().getName() + ", it is not Serializable");
+        }
+    }
+
+    public static Object read(DataInput in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return new String(readBytes(in), StandardCharsets.UTF_8);
+            case LONG:
+                return readVarLong(in);
+            case INTEGER:
+                return (int) readVarLong(in);
+            case BYTES:
+                return readBytes(in);
+            case SERIALIZABLE:
+                try (ObjectInputStream objectIn = new ObjectInputStream(new ByteArrayInputStream(readBytes(in)))) {
+                    objectIn.setObjectInputFilter(serialFilter);
+                    return objectIn.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+            default:
+                throw new IOException("unknown tag " + tag);
+        }
+    }
+
+    public static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        if (bytes.length > MAX_BYTES) {
+            throw new IOException("can not encode " + bytes.length + " bytes, the limit is " + MAX_BYTES);
+        }
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    public static byte[] readBytes(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length < 0 || length > MAX_BYTES) {
+            throw new IOException("bad length " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Zig-zag varint, so small negative numbers (like a missing epoch) stay short too
+     */
+    public static void writeVarLong(DataOutput out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    public static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+}
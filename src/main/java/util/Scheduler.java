@@ -0,0 +1,16 @@
+package util;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where proposers run their timers: phase timeouts, proposal deadlines and the wait before the next round. A
+ * simulation runs them in its own virtual time
+ */
+public interface Scheduler {
+
+    /**
+     * @return cancelling it keeps the task from running, if it has not yet
+     */
+    Future<?> schedule(Runnable task, long delay, TimeUnit unit);
+}
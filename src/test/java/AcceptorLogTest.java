@@ -0,0 +1,152 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AcceptorLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_recover_promise_and_accept() throws Exception {
+        File dir = folder.newFolder("acceptor");
+        DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", new AcceptorLog(dir));
+        assertFalse(acceptor.prepare(5L, "master").isNAK());
+        assertFalse(acceptor.accept(5L, "master", "node_1").isNAK());
+        assertFalse(acceptor.prepare(7L, "other").isNAK());
+        assertFalse(acceptor.prepareAll(9L).isNAK());
+        acceptor.close();
+
+        DefaultAcceptor recovered = new DefaultAcceptor("acceptor", new AcceptorLog(dir));
+        assertTrue(recovered.prepare(8L, "other").isNAK());
+        assertTrue(recovered.prepareAll(8L).isNAK());
+        Promise promise = recovered.prepare(11L, "master");
+        assertFalse(promise.isNAK());
+        assertEquals("node_1", promise.getValue());
+        assertEquals(Long.valueOf(5L), promise.getAcceptedEpoch());
+        recovered.close();
+    }
+
+    @Test
+    public void test_value_not_logged_is_not_accepted() throws Exception {
+        DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", new AcceptorLog(folder.newFolder("acceptor")));
+        assertFalse(acceptor.prepare(5L, "master").isNAK());
+        try {
+            acceptor.accept(5L, "master", new Object());
+            fail("a value the log can not encode should not be accepted");
+        } catch (PaxosException expected) {
+        }
+        Promise promise = acceptor.prepare(6L, "master");
+        assertNull(promise.getValue());
+        assertNull(promise.getAcceptedEpoch());
+        acceptor.close();
+    }
+
+    @Test
+    public void test_cut_torn_tail() throws Exception {
+        File dir = folder.newFolder("acceptor");
+        AcceptorLog log = new AcceptorLog(dir);
+        DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", log);
+        acceptor.accept(3L, "master", "node_1");
+        acceptor.close();
+
+        try (FileOutputStream out = new FileOutputStream(log.getFile(), true)) {
+            out.write(new byte[] { 0, 0, 0, 42, 1, 2, 3 });
+        }
+
+        DefaultAcceptor recovered = new DefaultAcceptor("acceptor", new AcceptorLog(dir));
+        assertEquals("node_1", recovered.prepare(4L, "master").getValue());
+        assertNull(recovered.prepare(4L, "other").getValue());
+        recovered.close();
+    }
+
+    @Test
+    public void test_group_commit() throws Exception {
+        AcceptorLog log = new AcceptorLog(folder.newFolder("acceptor"));
+        final DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", log);
+        int threads = 8;
+        final int loop = 100;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < loop; i++) {
+                    acceptor.accept(1L, "var_" + thread + "_" + i, "value");
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        // every accept writes a promise and an accept record
+        assertTrue(log.getFsyncNum() < threads * loop);
+        acceptor.close();
+    }
+
+    @Test
+    public void test_snapshot_and_compact() throws Exception {
+        File dir = folder.newFolder("acceptor");
+        DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", new AcceptorLog(dir));
+        for (int i = 0; i < 100; i++) {
+            acceptor.accept(3L, "var_" + i, "old_" + i);
+        }
+        acceptor.prepareAll(4L);
+        acceptor.snapshot();
+        acceptor.accept(5L, "var_0", "new_0");
+        acceptor.snapshot();
+        acceptor.accept(6L, "var_1", "new_1");
+        acceptor.close();
+
+        assertEquals(1, dir.listFiles((d, name) -> name.startsWith("snapshot-")).length);
+        assertEquals(1, dir.listFiles((d, name) -> name.startsWith("wal-")).length);
+
+        DefaultAcceptor recovered = new DefaultAcceptor("acceptor", new AcceptorLog(dir));
+        assertTrue(recovered.prepareAll(5L).isNAK());
+        assertTrue(recovered.prepare(5L, "var_1").isNAK());
+        assertEquals("new_0", recovered.prepare(7L, "var_0").getValue());
+        assertEquals("new_1", recovered.prepare(7L, "var_1").getValue());
+        assertEquals("old_99", recovered.prepare(7L, "var_99").getValue());
+        recovered.close();
+    }
+
+    @Test
+    public void test_roll_syncs_new_segment() throws Exception {
+        File dir = folder.newFolder("acceptor");
+        AcceptorLog log = new AcceptorLog(dir);
+        DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", log);
+        // the first segment of an empty dir
+        assertEquals(1, log.getDirSyncNum());
+        acceptor.accept(3L, "master", "node_1");
+        File first = log.getFile();
+
+        log.roll();
+        File second = log.getFile();
+        assertFalse(first.equals(second));
+        assertTrue(second.exists());
+        assertEquals(2, log.getDirSyncNum());
+        acceptor.accept(4L, "other", "node_2");
+        acceptor.close();
+
+        DefaultAcceptor recovered = new DefaultAcceptor("acceptor", new AcceptorLog(dir));
+        assertEquals("node_1", recovered.prepare(5L, "master").getValue());
+        assertEquals("node_2", recovered.prepare(5L, "other").getValue());
+        recovered.close();
+    }
+}
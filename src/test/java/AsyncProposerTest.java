@@ -0,0 +1,338 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class AsyncProposerTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void test_async_propose() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        }
+        DefaultProposer proposer1 = new DefaultProposer(acceptors, 0, 2);
+        DefaultProposer proposer2 = new DefaultProposer(acceptors, 1, 2);
+
+        CompletableFuture<Object> master1 = proposer1.proposeAsync("master", "node_1");
+        CompletableFuture<Object> master2 = proposer2.proposeAsync("master", "node_2");
+        assertEquals(master1.get(10, TimeUnit.SECONDS), master2.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_quorum_without_slowest_acceptor() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        }
+        acceptors.add(new SilentAcceptor());
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setMultiPaxos(true);
+
+        assertEquals("node_1", proposer.propose("master", "node_1"));
+        assertEquals("node_1", proposer.proposeAsync("master", "node_2").get(10, TimeUnit.SECONDS));
+        assertEquals("value_0", proposer.proposeAsync(0L, "value_0").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_learner_read() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        }
+        DefaultProposer proposer1 = new DefaultProposer(acceptors, 0, 2);
+        DefaultProposer proposer2 = new DefaultProposer(acceptors, 1, 2);
+        DefaultLearner learner = new DefaultLearner();
+        proposer1.addLearner(learner);
+        proposer1.setLearnerExecutor(DIRECT);
+        proposer2.addLearner(learner);
+        proposer2.setLearnerExecutor(DIRECT);
+
+        assertNull(learner.read("master"));
+        Object chosen = proposer1.propose("master", "node_1");
+        assertEquals(chosen, learner.read("master"));
+        proposer2.propose("master", "node_2");
+        assertEquals(chosen, learner.read("master"));
+
+        proposer2.setMultiPaxos(true);
+        assertEquals("node_2", proposer2.propose("slave", "node_2"));
+        assertEquals("node_2", learner.read("slave"));
+    }
+
+    @Test
+    public void test_learner_max_size() {
+        DefaultLearner learner = new DefaultLearner(2);
+        for (long slot = 0; slot < 10; slot++) {
+            learner.learn(slot, "value_" + slot);
+        }
+        assertEquals(2, learner.size());
+        assertEquals("value_9", learner.read(9L));
+    }
+
+    @Test
+    public void test_metrics() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        acceptors.add(new SilentAcceptor());
+        DefaultMetrics metrics = new DefaultMetrics();
+        DefaultProposer proposer1 = new DefaultProposer(acceptors, 0, 2);
+        DefaultProposer proposer2 = new DefaultProposer(acceptors, 1, 2);
+        proposer1.setMetrics(metrics);
+        proposer2.setMetrics(metrics);
+
+        assertEquals("node_2", proposer2.propose("master", "node_2"));
+        // the first prepare of proposer 0 comes with a smaller epoch
+        assertEquals("node_2", proposer1.propose("master", "node_1"));
+
+        assertEquals(1, metrics.getHistogram("proposer_1.phase1.latency").getCount());
+        assertEquals(1, metrics.getHistogram("proposer_1.rounds").getMax());
+        assertEquals(2, metrics.getCount("proposer_0.phase1.nak"));
+        assertEquals(2, metrics.getHistogram("proposer_0.rounds").getMax());
+        assertEquals(0, metrics.getHistogram("proposer_0.acceptor_2.latency").getCount());
+    }
+
+    @Test
+    public void test_admission() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new SilentAcceptor());
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setMaxPendingProposals(2);
+
+        CompletableFuture<Object> master1 = proposer.proposeAsync("master", "node_1");
+        proposer.proposeAsync("slave", "node_1");
+        // joins the proposal in flight for the var
+        CompletableFuture<Object> master2 = proposer.proposeAsync("master", "node_2");
+        master2.cancel(false);
+        assertFalse(master1.isDone());
+
+        try {
+            proposer.proposeAsync("backup", "node_1").getNow(null);
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof OverloadException);
+        }
+        assertEquals(1, ((DefaultMetrics) proposer.getMetrics()).getCount("proposer_0.rejected"));
+    }
+
+    @Test
+    public void test_epochs_per_var() {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new SilentAcceptor());
+        DefaultProposer proposer = new DefaultProposer(acceptors, 1, 2);
+
+        // losing var a to epoch 100 leaves var b where it was
+        assertEquals(103, proposer.generateEpoch(100L, "a"));
+        assertEquals(3, proposer.generateEpoch(0L, "b"));
+        assertEquals(107, proposer.generateEpoch(0L, "a"));
+        // an election covers every var, rounds of any var start above it, and the two never share an epoch
+        assertEquals(205, proposer.generateEpoch(200L, null));
+        assertEquals(207, proposer.generateEpoch(0L, "b"));
+    }
+
+    @Test
+    public void test_election_never_reuses_epoch_of_var_round() throws Exception {
+        List<DefaultAcceptor> acceptors = new ArrayList<>();
+        List<QuorumSystemTest.CrashingAcceptor> links = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new DefaultAcceptor());
+            links.add(new QuorumSystemTest.CrashingAcceptor(new AsyncAcceptorAdapter(acceptors.get(i), DIRECT)));
+        }
+        DefaultProposer leader = new DefaultProposer(links, 0, 2);
+
+        // a round of var y was prepared everywhere, but its accept only reached acceptor 0
+        long epoch = leader.generateEpoch(0L, "y");
+        for (DefaultAcceptor acceptor : acceptors) {
+            assertFalse(acceptor.prepare(epoch, "y").isNAK());
+        }
+        assertFalse(acceptors.get(0).accept(epoch, "y", "v").isNAK());
+
+        // the leader does not hear from acceptor 0, so its value is chosen in its own epoch
+        links.get(0).crashed = true;
+        leader.setMultiPaxos(true);
+        Object chosen = leader.proposeAsLeader("y", "w");
+        assertEquals("w", chosen);
+
+        // a full round over a quorum holding what acceptor 0 accepted still finds the chosen value
+        links.get(0).crashed = false;
+        links.get(2).crashed = true;
+        leader.setMultiPaxos(false);
+        assertEquals(chosen, leader.proposeAsync("y", "x").get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_trace() throws Exception {
+        Tracer tracer = new Tracer(64);
+        DefaultAcceptor acceptor1 = new DefaultAcceptor("trace_acceptor_1");
+        DefaultAcceptor acceptor2 = new DefaultAcceptor("trace_acceptor_2");
+        acceptor1.setTracer(tracer);
+        acceptor2.setTracer(tracer);
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new AsyncAcceptorAdapter(acceptor1, DIRECT));
+        acceptors.add(new AsyncAcceptorAdapter(acceptor2, DIRECT));
+        acceptors.add(new SilentAcceptor());
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setTracer(tracer);
+
+        assertEquals("node_1", proposer.propose("master", "node_1"));
+        assertTrue(tracer.dump().isEmpty());
+
+        tracer.setEnabled(true);
+        assertEquals("node_1", proposer.propose("master", "node_2"));
+        List<String> events = tracer.dump();
+        assertEquals(7, events.size());
+        assertTrue(events.get(0).contains("PROPOSE_PREPARE proposer_0"));
+        assertTrue(events.get(1).contains("PREPARE_ACK trace_acceptor_1"));
+        assertTrue(events.get(6).contains("PROPOSE_CHOSEN proposer_0"));
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void test_phase_timeout() {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        acceptors.add(new SilentAcceptor());
+        acceptors.add(new SilentAcceptor());
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setPhaseTimeout(100, TimeUnit.MILLISECONDS);
+        proposer.setRetryPolicy(new ExponentialBackoff(1, 1, TimeUnit.MILLISECONDS, 2));
+
+        proposer.propose("master", "node_1");
+    }
+
+    @Test(timeout = 10000)
+    public void test_collector_completes_outside_its_lock() throws Exception {
+        final QuorumCollector<Accepted> collector = new QuorumCollector<>("phase 2", 3,
+                acked -> Long.bitCount(acked) >= 2);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        collector.future().thenRun(() -> {
+            running.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Thread quorum = new Thread(() -> {
+            collector.onResponse(0, Accepted.create(1L, "var", "value"), null);
+            collector.onResponse(1, Accepted.create(1L, "var", "value"), null);
+        });
+        quorum.start();
+        running.await();
+
+        // neither a late response nor the timer waits for the next phase to finish
+        collector.onResponse(2, Accepted.create(1L, "var", "value"), null);
+        collector.timeout(1L);
+        release.countDown();
+        quorum.join();
+        assertTrue(collector.future().get().isQuorum());
+    }
+
+    @Test
+    public void test_lost_message_costs_a_round() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        acceptors.add(new LosingAcceptor(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT)));
+        acceptors.add(new SilentAcceptor());
+        DefaultMetrics metrics = new DefaultMetrics();
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setMetrics(metrics);
+        proposer.setPhaseTimeout(100, TimeUnit.MILLISECONDS);
+
+        assertEquals("node_1", proposer.proposeAsync("master", "node_1").get(10, TimeUnit.SECONDS));
+        assertEquals(2, metrics.getHistogram("proposer_0.rounds").getMax());
+    }
+
+    @Test
+    public void test_retry_budget() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new PreemptingAcceptor());
+        }
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setRetryPolicy(new ExponentialBackoff(1, 1, TimeUnit.MICROSECONDS, 2000));
+
+        try {
+            proposer.proposeAsync("master", "node_1").get(10, TimeUnit.SECONDS);
+            fail("a proposal which always loses should give up");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+    }
+
+    /**
+     * Has always promised an epoch a little greater than the one asked for, like a proposer outrunning us forever
+     */
+    public static class PreemptingAcceptor extends SilentAcceptor {
+
+        @Override
+        public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+            return CompletableFuture.completedFuture(Promise.create(epoch + 1, var, null, true));
+        }
+    }
+
+    /**
+     * Loses the first prepare sent to it
+     */
+    public static class LosingAcceptor extends SilentAcceptor {
+
+        private final AsyncAcceptor acceptor;
+        private final AtomicBoolean lost = new AtomicBoolean();
+
+        LosingAcceptor(AsyncAcceptor acceptor) {
+            this.acceptor = acceptor;
+        }
+
+        @Override
+        public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+            return lost.compareAndSet(false, true) ? super.prepareAsync(epoch, var) : acceptor.prepareAsync(epoch,
+                    var);
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value) {
+            return acceptor.acceptAsync(epoch, var, value);
+        }
+    }
+
+    /**
+     * Never responds, like a crashed acceptor
+     */
+    public static class SilentAcceptor implements AsyncAcceptor {
+
+        @Override
+        public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<Promise> prepareAllAsync(Long epoch) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptWithoutPrepareAsync(Long epoch, Object var, Object value) {
+            return new CompletableFuture<>();
+        }
+    }
+}
@@ -1,10 +1,14 @@
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
@@ -13,6 +17,7 @@ import java.util.concurrent.ThreadPoolExecutor.CallerRunsPolicy;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Test;
 import util.Asserts;
 
@@ -57,6 +62,27 @@ public class ChooseMasterTest {
         Asserts.equals(master1, master2, master3, master4);
     }
 
+    @Test
+    public void test_concurrent_vars() throws Exception {
+        quorum = QuorumFactory.create(3, 1);
+        CompletionService<Object> executor = createCompletionService();
+        Proposer proposer = quorum.getProposers().get(0);
+
+        int varNum = 100;
+        for (int i = 0; i < varNum; i++) {
+            executor.submit(new ProposorCall(proposer, "shard_" + i, "node_" + i));
+        }
+
+        List<Object> results = new ArrayList<>(varNum);
+        for (int i = 0; i < varNum; i++) {
+            results.add(executor.take().get());
+        }
+        for (int i = 0; i < varNum; i++) {
+            assertEquals("node_" + i, proposer.propose("shard_" + i, "node_x"));
+        }
+        assertEquals(varNum, results.size());
+    }
+
     @Test
     public void test_concurrent() throws Exception {
         // 1 acceptor, 1 proposer, 3 client , loop 50 instances
@@ -69,6 +95,55 @@ public class ChooseMasterTest {
         //testConcurrentWithLoopNum(5, 5, 5, 50);
     }
 
+    @Test
+    public void test_concurrent_vars_on_virtual_threads() throws Exception {
+        Assume.assumeTrue(AcceptorExecutors.isVirtualThreadsSupported());
+        Set<Acceptor> acceptors = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new DefaultAcceptor());
+        }
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1, AcceptorExecutors.virtualThreads());
+        quorum = Quorum.create(acceptors, Collections.<Proposer> singletonList(proposer));
+
+        // far more proposals in flight than a pool would have threads
+        int varNum = 1000;
+        List<CompletableFuture<Object>> results = new ArrayList<>(varNum);
+        for (int i = 0; i < varNum; i++) {
+            results.add(proposer.proposeAsync("shard_" + i, "node_" + i));
+        }
+        for (int i = 0; i < varNum; i++) {
+            assertEquals("node_" + i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void test_concurrent_forwarding() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            if (quorum != null) {
+                quorum.stop();
+            }
+            quorum = QuorumFactory.create(3, 3);
+            List<DefaultProposer> proposers = new ArrayList<>();
+            for (Proposer proposer : quorum.getProposers()) {
+                proposers.add((DefaultProposer) proposer);
+            }
+            for (DefaultProposer proposer : proposers) {
+                proposer.setForwarding(proposers);
+                proposer.setRetryPolicy(new ExponentialBackoff(1, 20, TimeUnit.MILLISECONDS, 50));
+            }
+            CompletionService<Object> executor = createCompletionService();
+            for (int j = 0; j < 5; j++) {
+                executor.submit(new ProposorCall(proposers.get(j % 3), "master", "node_" + j));
+            }
+            List<Object> results = new ArrayList<>();
+            for (int j = 0; j < 5; j++) {
+                results.add(executor.take().get());
+            }
+            Asserts.equals(results.toArray());
+            this.executor.shutdown();
+        }
+    }
+
     public void testConcurrentWithLoopNum(int acceptorNum, int proposerNum, int clientNum, int loopNum)
             throws Exception {
         for (int i = 0; i < loopNum; i++) {
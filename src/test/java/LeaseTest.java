@@ -0,0 +1,81 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import util.Clock;
+
+public class LeaseTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void test_read_under_lease() throws Exception {
+        ManualClock clock = new ManualClock();
+        List<MultiPaxosTest.CountingAcceptor> counters = new ArrayList<>();
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            DefaultAcceptor acceptor = new DefaultAcceptor();
+            acceptor.setClock(clock);
+            acceptor.setLease(10, TimeUnit.SECONDS, 2);
+            MultiPaxosTest.CountingAcceptor counter = new MultiPaxosTest.CountingAcceptor(acceptor);
+            counters.add(counter);
+            acceptors.add(new AsyncAcceptorAdapter(counter, DIRECT));
+        }
+        DefaultProposer leader = new DefaultProposer(acceptors, 0, 2);
+        leader.setMultiPaxos(true);
+        leader.setClock(clock);
+        leader.setLease(10, 1, TimeUnit.SECONDS);
+        DefaultProposer other = new DefaultProposer(acceptors, 1, 2);
+        other.setClock(clock);
+
+        assertEquals("node_1", leader.propose("master", "node_1"));
+        int calls = calls(counters);
+        assertEquals("node_1", leader.read("master"));
+        assertNull(leader.read("slave"));
+        assertEquals(calls, calls(counters));
+
+        // the acceptors refuse the other proposer while the lease holds
+        CompletableFuture<Object> slave = other.proposeAsync("slave", "node_2");
+        Thread.sleep(100);
+        assertFalse(slave.isDone());
+        assertNull(leader.read("slave"));
+
+        clock.advance(11, TimeUnit.SECONDS);
+        assertEquals("node_2", slave.get(10, TimeUnit.SECONDS));
+        assertEquals("node_2", leader.read("slave"));
+        assertTrue(leader.isLeader());
+        assertEquals("node_1", leader.propose("master", "node_3"));
+    }
+
+    private static int calls(List<MultiPaxosTest.CountingAcceptor> counters) {
+        int calls = 0;
+        for (MultiPaxosTest.CountingAcceptor counter : counters) {
+            calls += counter.prepare.get() + counter.accept.get() + counter.prepareAll.get()
+                    + counter.acceptWithoutPrepare.get();
+        }
+        return calls;
+    }
+
+    public static class ManualClock implements Clock {
+
+        private final AtomicLong now = new AtomicLong();
+
+        @Override
+        public long nanoTime() {
+            return now.get();
+        }
+
+        public void advance(long duration, TimeUnit unit) {
+            now.addAndGet(unit.toNanos(duration));
+        }
+    }
+}
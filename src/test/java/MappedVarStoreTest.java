@@ -0,0 +1,85 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedVarStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void test_warm_restart() throws Exception {
+        File dir = folder.newFolder("store");
+        int vars = 10000;
+        DefaultAcceptor acceptor = new DefaultAcceptor("acceptor", new MappedVarStore(dir, vars), null);
+        for (int i = 0; i < vars; i++) {
+            assertFalse(acceptor.accept(3L, "var_" + i, (long) i).isNAK());
+        }
+        assertFalse(acceptor.prepareAll(4L).isNAK());
+        assertFalse(acceptor.prepare(5L, "var_0").isNAK());
+        acceptor.close();
+
+        MappedVarStore store = new MappedVarStore(dir, 1);
+        assertEquals(vars, store.size());
+        DefaultAcceptor recovered = new DefaultAcceptor("acceptor", store, null);
+        assertTrue(recovered.prepareAll(3L).isNAK());
+        assertTrue(recovered.prepare(4L, "var_0").isNAK());
+        assertTrue(recovered.prepare(3L, "other").isNAK());
+        for (int i = 0; i < vars; i++) {
+            Promise promise = recovered.prepare(6L, "var_" + i);
+            assertEquals((long) i, promise.getValue());
+            assertEquals(Long.valueOf(3L), promise.getAcceptedEpoch());
+        }
+        assertNull(recovered.prepare(6L, "other").getValue());
+        recovered.close();
+    }
+
+    @Test
+    public void test_grow() throws Exception {
+        File dir = folder.newFolder("store");
+        int vars = 10000;
+        MappedVarStore store = new MappedVarStore(dir, 1);
+        for (int i = 0; i < vars; i++) {
+            store.promise("var_" + i, i);
+        }
+        store.close();
+
+        store = new MappedVarStore(dir, 1);
+        assertEquals(vars, store.size());
+        VarStore.State state = new VarStore.State();
+        for (int i = 0; i < vars; i++) {
+            assertTrue(store.read("var_" + i, state));
+            assertEquals(i, state.promisedEpoch);
+        }
+        assertFalse(store.read("other", state));
+        store.close();
+    }
+
+    @Test
+    public void test_values_reuse_space() throws Exception {
+        File dir = folder.newFolder("store");
+        File data = new File(dir, "vars.dat");
+        byte[] value = new byte[8000];
+        // 40 MB of values, which would take three 16 MB chunks if none were freed
+        for (int run = 0; run < 2; run++) {
+            MappedVarStore store = new MappedVarStore(dir, 1);
+            for (long epoch = 0; epoch < 5000; epoch++) {
+                value[0] = (byte) epoch;
+                store.accept("var", epoch, value.clone());
+            }
+            VarStore.State state = new VarStore.State();
+            assertTrue(store.read("var", state));
+            assertEquals(4999L, state.acceptedEpoch);
+            assertEquals((byte) 4999, ((byte[]) state.value)[0]);
+            store.close();
+            assertEquals(1 << 24, data.length());
+        }
+    }
+}
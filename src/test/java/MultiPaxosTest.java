@@ -0,0 +1,149 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class MultiPaxosTest {
+
+    private Quorum quorum = null;
+
+    @Test
+    public void test_leader_skip_phase1() {
+        Set<Acceptor> acceptors = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new CountingAcceptor(new DefaultAcceptor()));
+        }
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1, 5);
+        proposer.setMultiPaxos(true);
+        quorum = Quorum.create(acceptors, Collections.<Proposer> singletonList(proposer));
+
+        for (long slot = 0; slot < 10; slot++) {
+            assertEquals("value_" + slot, proposer.propose(slot, "value_" + slot));
+        }
+        assertTrue(proposer.isLeader());
+        // the slowest acceptor may still be working on the last accept
+        proposer.stop();
+
+        // calls still queued when a majority answered are cancelled, so the slowest acceptor may miss some
+        int acceptWithoutPrepare = 0;
+        for (Acceptor acceptor : acceptors) {
+            CountingAcceptor counting = (CountingAcceptor) acceptor;
+            assertTrue(counting.prepareAll.get() <= 1);
+            assertEquals(0, counting.prepare.get());
+            assertEquals(0, counting.accept.get());
+            assertTrue(counting.acceptWithoutPrepare.get() <= 10);
+            acceptWithoutPrepare += counting.acceptWithoutPrepare.get();
+        }
+        assertTrue(acceptWithoutPrepare >= 20);
+    }
+
+    @Test
+    public void test_leader_keep_chosen_value() {
+        quorum = QuorumFactory.create(3, 2);
+        DefaultProposer follower = (DefaultProposer) quorum.getProposers().get(0);
+        DefaultProposer leader = (DefaultProposer) quorum.getProposers().get(1);
+        leader.setMultiPaxos(true);
+
+        Object master = follower.propose("master", "node_1");
+        assertEquals(master, leader.propose("master", "node_2"));
+        assertEquals("slot_value", leader.propose(0L, "slot_value"));
+        assertEquals("slot_value", follower.propose(0L, "other_value"));
+    }
+
+    @Test
+    public void test_leader_preempted() {
+        quorum = QuorumFactory.create(3, 2);
+        DefaultProposer proposer1 = (DefaultProposer) quorum.getProposers().get(0);
+        DefaultProposer proposer2 = (DefaultProposer) quorum.getProposers().get(1);
+        proposer1.setMultiPaxos(true);
+        proposer2.setMultiPaxos(true);
+
+        assertEquals("value_0", proposer1.propose(0L, "value_0"));
+        assertEquals("value_1", proposer2.propose(1L, "value_1"));
+        assertEquals("value_2", proposer1.propose(2L, "value_2"));
+        assertFalse(proposer2.isLeader() && proposer1.isLeader());
+
+        assertEquals("value_1", proposer1.propose(1L, "other_value"));
+        assertEquals("value_2", proposer2.propose(2L, "other_value"));
+    }
+
+    @Test
+    public void test_acceptor_without_multi_paxos() {
+        Set<Acceptor> acceptors = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            final Acceptor delegate = new DefaultAcceptor();
+            acceptors.add(new Acceptor() {
+
+                @Override
+                public Promise prepare(Long epoch, Object var) {
+                    return delegate.prepare(epoch, var);
+                }
+
+                @Override
+                public Accepted accept(Long epoch, Object var, Object value) {
+                    return delegate.accept(epoch, var, value);
+                }
+            });
+        }
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1, 5);
+        proposer.setMultiPaxos(true);
+        quorum = Quorum.create(acceptors, Collections.<Proposer> singletonList(proposer));
+
+        // every prepareAll is NAKed, so each var gets a full round
+        for (long slot = 0; slot < 3; slot++) {
+            assertEquals("value_" + slot, proposer.propose(slot, "value_" + slot));
+        }
+        assertFalse(proposer.isLeader());
+    }
+
+    @After
+    public void after() {
+        if (quorum != null) {
+            quorum.stop();
+        }
+    }
+
+    public static class CountingAcceptor implements Acceptor {
+
+        private final Acceptor delegate;
+        final AtomicInteger    prepare              = new AtomicInteger();
+        final AtomicInteger    accept               = new AtomicInteger();
+        final AtomicInteger    prepareAll           = new AtomicInteger();
+        final AtomicInteger    acceptWithoutPrepare = new AtomicInteger();
+
+        public CountingAcceptor(Acceptor delegate){
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Promise prepare(Long epoch, Object var) {
+            prepare.incrementAndGet();
+            return delegate.prepare(epoch, var);
+        }
+
+        @Override
+        public Accepted accept(Long epoch, Object var, Object value) {
+            accept.incrementAndGet();
+            return delegate.accept(epoch, var, value);
+        }
+
+        @Override
+        public Promise prepareAll(Long epoch) {
+            prepareAll.incrementAndGet();
+            return delegate.prepareAll(epoch);
+        }
+
+        @Override
+        public Accepted acceptWithoutPrepare(Long epoch, Object var, Object value) {
+            acceptWithoutPrepare.incrementAndGet();
+            return delegate.acceptWithoutPrepare(epoch, var, value);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class QuorumSystemTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void test_flexible_leader_with_small_phase2() {
+        List<CrashingAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            acceptors.add(new CrashingAcceptor(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT)));
+        }
+        acceptors.get(4).crashed = true;
+        DefaultProposer leader = new DefaultProposer(acceptors, 0, 1);
+        leader.setQuorums(WeightedQuorums.flexible(5, 4, 2));
+        leader.setMultiPaxos(true);
+        leader.setPhaseTimeout(1, TimeUnit.SECONDS);
+
+        assertEquals("value_0", leader.propose(0L, "value_0"));
+        assertTrue(leader.isLeader());
+
+        // a majority is gone, but any 2 acceptors still choose values for the leader
+        acceptors.get(2).crashed = true;
+        acceptors.get(3).crashed = true;
+        for (long slot = 1; slot < 10; slot++) {
+            assertEquals("value_" + slot, leader.propose(slot, "value_" + slot));
+        }
+    }
+
+    @Test
+    public void test_weighted() {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        acceptors.add(new AsyncAcceptorAdapter(new DefaultAcceptor(), DIRECT));
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(new AsyncProposerTest.SilentAcceptor());
+        }
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+        proposer.setQuorums(new WeightedQuorums(new int[] { 3, 1, 1, 1, 1 }, 4, 4));
+        proposer.setPhaseTimeout(1, TimeUnit.SECONDS);
+
+        assertEquals("node_1", proposer.propose("master", "node_1"));
+        assertEquals("node_1", proposer.propose("master", "node_2"));
+    }
+
+    @Test
+    public void test_grid() {
+        // rows {0, 1}, {2, 3}, {4, 5}
+        GridQuorums quorums = new GridQuorums(3, 2);
+        assertTrue(quorums.isPhase2Quorum(0b000011L));
+        assertTrue(quorums.isPhase2Quorum(0b111100L));
+        assertFalse(quorums.isPhase2Quorum(0b010101L));
+        assertTrue(quorums.isPhase1Quorum(0b010101L));
+        assertTrue(quorums.isPhase1Quorum(0b100110L));
+        assertFalse(quorums.isPhase1Quorum(0b001111L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_quorums_must_intersect() {
+        WeightedQuorums.flexible(5, 3, 2);
+    }
+
+    /**
+     * Stops responding once crashed
+     */
+    static class CrashingAcceptor extends AsyncProposerTest.SilentAcceptor {
+
+        private final AsyncAcceptor acceptor;
+        volatile boolean            crashed = false;
+
+        CrashingAcceptor(AsyncAcceptor acceptor) {
+            this.acceptor = acceptor;
+        }
+
+        @Override
+        public CompletableFuture<Promise> prepareAsync(Long epoch, Object var) {
+            return crashed ? super.prepareAsync(epoch, var) : acceptor.prepareAsync(epoch, var);
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptAsync(Long epoch, Object var, Object value) {
+            return crashed ? super.acceptAsync(epoch, var, value) : acceptor.acceptAsync(epoch, var, value);
+        }
+
+        @Override
+        public CompletableFuture<Promise> prepareAllAsync(Long epoch) {
+            return crashed ? super.prepareAllAsync(epoch) : acceptor.prepareAllAsync(epoch);
+        }
+
+        @Override
+        public CompletableFuture<Accepted> acceptWithoutPrepareAsync(Long epoch, Object var, Object value) {
+            return crashed ? super.acceptWithoutPrepareAsync(epoch, var, value)
+                    : acceptor.acceptWithoutPrepareAsync(epoch, var, value);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class RemoteAcceptorTest {
+
+    private final List<AcceptorServer> servers = new ArrayList<>();
+    private final List<RemoteAcceptor>  remotes = new ArrayList<>();
+
+    @After
+    public void close() throws Exception {
+        for (RemoteAcceptor remote : remotes) {
+            remote.close();
+        }
+        for (AcceptorServer server : servers) {
+            server.close();
+        }
+    }
+
+    private RemoteAcceptor start(Acceptor acceptor) throws Exception {
+        return start(acceptor, 1);
+    }
+
+    private RemoteAcceptor start(Acceptor acceptor, int maxBatchSize) throws Exception {
+        AcceptorServer server = new AcceptorServer(acceptor,
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 4);
+        servers.add(server);
+        RemoteAcceptor remote = new RemoteAcceptor(server.getAddress(), maxBatchSize, 1, TimeUnit.MILLISECONDS);
+        remotes.add(remote);
+        return remote;
+    }
+
+    @Test
+    public void test_round_trip() throws Exception {
+        RemoteAcceptor remote = start(new DefaultAcceptor());
+
+        Promise promise = remote.prepare(3L, "master");
+        assertFalse(promise.isNAK());
+        assertEquals("master", promise.getVar());
+        assertFalse(remote.accept(3L, "master", "node_1").isNAK());
+
+        promise = remote.prepare(5L, "master");
+        assertEquals(Long.valueOf(3L), promise.getPreEpoch());
+        assertEquals(Long.valueOf(3L), promise.getAcceptedEpoch());
+        assertEquals("node_1", promise.getValue());
+
+        Accepted accepted = remote.accept(4L, "master", "node_2");
+        assertTrue(accepted.isNAK());
+        assertEquals(Long.valueOf(5L), accepted.getEpoch());
+
+        promise = remote.prepareAll(7L);
+        assertFalse(promise.isNAK());
+        assertEquals(Arrays.asList("master"), new ArrayList<>(promise.getAcceptedVars()));
+        assertFalse(remote.acceptWithoutPrepare(7L, 42L, new byte[] { 1, 2, 3 }).isNAK());
+    }
+
+    @Test
+    public void test_propose_over_loopback() throws Exception {
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            acceptors.add(start(new DefaultAcceptor()));
+        }
+        DefaultProposer proposer1 = new DefaultProposer(acceptors, 0, 2);
+        DefaultProposer proposer2 = new DefaultProposer(acceptors, 1, 2);
+
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(proposer1.proposeAsync("var_" + i, "node_1"));
+            results.add(proposer2.proposeAsync("var_" + i, "node_2"));
+        }
+        for (int i = 0; i < 100; i++) {
+            Object chosen = results.get(2 * i).get(10, TimeUnit.SECONDS);
+            assertEquals(chosen, results.get(2 * i + 1).get(10, TimeUnit.SECONDS));
+            assertTrue(new HashSet<>(Arrays.asList("node_1", "node_2")).contains(chosen));
+        }
+    }
+
+    @Test
+    public void test_batch() throws Exception {
+        final AtomicInteger batches = new AtomicInteger();
+        DefaultAcceptor acceptor = new DefaultAcceptor() {
+
+            @Override
+            public List<NAKAble> handle(List<AcceptorRequest> requests) {
+                batches.incrementAndGet();
+                return super.handle(requests);
+            }
+        };
+        List<AsyncAcceptor> acceptors = new ArrayList<>();
+        acceptors.add(start(acceptor, 16));
+        acceptors.add(start(new DefaultAcceptor(), 16));
+        acceptors.add(start(new DefaultAcceptor(), 16));
+        DefaultProposer proposer = new DefaultProposer(acceptors, 0, 1);
+
+        List<CompletableFuture<Object>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(proposer.proposeAsync("var_" + i, "value_" + i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals("value_" + i, results.get(i).get(10, TimeUnit.SECONDS));
+        }
+        assertTrue(batches.get() > 0);
+        assertEquals("value_7", acceptors.get(0).prepareAsync(100L, "var_7").get(10, TimeUnit.SECONDS).getValue());
+    }
+
+    @Test
+    public void test_serial_filter() throws Exception {
+        RemoteAcceptor remote = start(new DefaultAcceptor());
+        assertFalse(remote.accept(1L, "list", new ArrayList<>(Arrays.asList("a", "b"))).isNAK());
+        assertEquals(Arrays.asList("a", "b"), remote.prepare(2L, "list").getValue());
+        try {
+            remote.accept(1L, "other", new Unknown());
+            fail("a class outside the filter should be rejected");
+        } catch (PaxosException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("InvalidClassException"));
+        }
+    }
+
+    @Test
+    public void test_bad_batch_fails_every_call() throws Exception {
+        // lingers long enough for both calls to go out in one batch
+        RemoteAcceptor remote = new RemoteAcceptor(start(new DefaultAcceptor()).getAddress(), 2, 10, TimeUnit.SECONDS);
+        remotes.add(remote);
+        CompletableFuture<Accepted> good = remote.acceptAsync(1L, "good", "value");
+        CompletableFuture<Accepted> bad = remote.acceptAsync(1L, "bad", new Unknown());
+        for (CompletableFuture<Accepted> call : Arrays.asList(good, bad)) {
+            try {
+                call.get(10, TimeUnit.SECONDS);
+                fail("the batch should fail");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof PaxosException);
+            }
+        }
+    }
+
+    static class Unknown implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    @Test(timeout = 10000)
+    public void test_bad_frame_closes_only_its_connection() throws Exception {
+        RemoteAcceptor remote = start(new DefaultAcceptor());
+        assertFalse(remote.prepare(1L, "master").isNAK());
+        try (SocketChannel bad = SocketChannel.open(remote.getAddress())) {
+            ByteBuffer length = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE);
+            length.putInt(0, -1);
+            bad.write(length);
+            assertEquals(-1, bad.read(ByteBuffer.allocate(16)));
+        }
+        assertFalse(remote.prepare(2L, "master").isNAK());
+    }
+
+    @Test(timeout = 10000)
+    public void test_oversized_header_does_not_allocate_the_frame() throws Exception {
+        try (WireLoop loop = new WireLoop("test_loop");
+                ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            try (SocketChannel peer = SocketChannel.open(server.getLocalAddress())) {
+                WireLoop.Connection connection = loop.register(server.accept(), new WireLoop.FrameHandler() {
+
+                    @Override
+                    public void onFrame(WireLoop.Connection connection, byte[] frame) {
+                        fail();
+                    }
+
+                    @Override
+                    public void onClose(WireLoop.Connection connection, IOException cause) {
+                    }
+                });
+                // claims the largest frame, then sends only part of it
+                ByteBuffer bytes = ByteBuffer.allocate(WireProtocol.LENGTH_SIZE + 200 * 1024);
+                bytes.putInt(0, WireProtocol.MAX_FRAME_SIZE);
+                while (bytes.hasRemaining()) {
+                    peer.write(bytes);
+                }
+                while (connection.readBufferCapacity() < bytes.capacity()) {
+                    Thread.sleep(10);
+                }
+                assertTrue(connection.readBufferCapacity() <= 2 * bytes.capacity());
+                assertFalse(connection.isClosed());
+            }
+        }
+    }
+
+    @Test(expected = PaxosException.class)
+    public void test_server_down() throws Exception {
+        RemoteAcceptor remote = start(new DefaultAcceptor());
+        remote.prepare(1L, "master");
+        servers.remove(0).close();
+        remote.prepare(2L, "master");
+    }
+}
@@ -0,0 +1,122 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ReplicatedLogTest {
+
+    private Quorum        quorum = null;
+    private ReplicatedLog log    = null;
+
+    @Test
+    public void test_batch_concurrent_append() throws Exception {
+        quorum = QuorumFactory.create(3, 1);
+        DefaultProposer proposer = (DefaultProposer) quorum.getProposers().get(0);
+        proposer.setMultiPaxos(true);
+        log = new ReplicatedLog(proposer, 16, 5);
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(log.append("value_" + i));
+        }
+
+        Map<Long, Integer> valuesPerSlot = new HashMap<>();
+        for (CompletableFuture<Long> future : futures) {
+            Long slot = future.get(10, TimeUnit.SECONDS);
+            valuesPerSlot.merge(slot, 1, Integer::sum);
+        }
+
+        DefaultMetrics.DefaultHistogram batchSizes = ((DefaultMetrics) log.getMetrics()).getHistogram(log.getName()
+                + ".batch.size");
+        assertEquals(batchSizes.getCount(), valuesPerSlot.size());
+        assertTrue(batchSizes.getCount() < 100);
+        assertTrue(batchSizes.getMax() <= 16);
+        for (Map.Entry<Long, Integer> entry : valuesPerSlot.entrySet()) {
+            Batch batch = (Batch) proposer.propose(entry.getKey(), "other_value");
+            assertEquals(entry.getValue().intValue(), batch.size());
+        }
+    }
+
+    @Test
+    public void test_pipelined_learn_in_slot_order() throws Exception {
+        quorum = QuorumFactory.create(3, 1);
+        log = new ReplicatedLog(quorum.getProposers().get(0), 2, 0, 4);
+        final List<Long> learnedSlots = new CopyOnWriteArrayList<>();
+        log.addLearner((slot, value) -> learnedSlots.add((Long) slot));
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(log.append("value_" + i));
+        }
+        for (CompletableFuture<Long> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(log.getNextSlot(), learnedSlots.size());
+        for (int i = 0; i < learnedSlots.size(); i++) {
+            assertEquals(i, learnedSlots.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void test_two_logs_share_slots() throws Exception {
+        quorum = QuorumFactory.create(3, 2);
+        log = new ReplicatedLog(quorum.getProposers().get(0), 4, 1);
+        ReplicatedLog other = new ReplicatedLog(quorum.getProposers().get(1), 4, 1);
+        try {
+            Long slot1 = log.append("value_1").get(10, TimeUnit.SECONDS);
+            Long slot2 = other.append("value_2").get(10, TimeUnit.SECONDS);
+            assertEquals(0L, slot1.longValue());
+            assertEquals(1L, slot2.longValue());
+        } finally {
+            other.stop();
+        }
+    }
+
+    @Test
+    public void test_failed_slot_is_filled() throws Exception {
+        quorum = QuorumFactory.create(3, 1);
+        final Proposer proposer = quorum.getProposers().get(0);
+        final AtomicInteger calls = new AtomicInteger();
+        log = new ReplicatedLog(new Proposer() {
+
+            @Override
+            public Object propose(Object var, Object value) {
+                if (calls.getAndIncrement() == 0) {
+                    throw new TimeoutException("phase 1 timed out");
+                }
+                return proposer.propose(var, value);
+            }
+
+            @Override
+            public void stop() {
+            }
+        }, 1, 0);
+        final List<Long> learnedSlots = new CopyOnWriteArrayList<>();
+        log.addLearner((slot, value) -> learnedSlots.add((Long) slot));
+
+        assertEquals(0L, log.append("value_0").get(10, TimeUnit.SECONDS).longValue());
+        assertEquals(1L, log.append("value_1").get(10, TimeUnit.SECONDS).longValue());
+        assertEquals(2, learnedSlots.size());
+    }
+
+    @After
+    public void after() {
+        if (log != null) {
+            log.stop();
+        }
+        if (quorum != null) {
+            quorum.stop();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class ShardedProposerTest {
+
+    private ShardedProposer proposer;
+
+    @Test
+    public void test_route_and_rebalance() {
+        List<DefaultProposer> groups = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Set<Acceptor> acceptors = new HashSet<>();
+            for (int j = 0; j < 3; j++) {
+                acceptors.add(new DefaultAcceptor("group_" + i + "_acceptor_" + j));
+            }
+            groups.add(new DefaultProposer(acceptors, 0, 1, 3));
+        }
+        proposer = new ShardedProposer(groups, 16);
+
+        Set<Integer> used = new HashSet<>();
+        for (int i = 0; i < 64; i++) {
+            assertEquals("node_" + i, proposer.propose("shard_" + i, "node_" + i));
+            used.add(proposer.groupOf("shard_" + i));
+        }
+        assertEquals(4, used.size());
+
+        // move every slot twice, the values chosen before stay chosen
+        for (int slot = 0; slot < proposer.getSlotNum(); slot++) {
+            proposer.rebalance(slot, (slot + 1) % 4);
+        }
+        assertEquals("node_1", proposer.propose("shard_1", "node_x"));
+        for (int slot = 0; slot < proposer.getSlotNum(); slot++) {
+            proposer.rebalance(slot, (slot + 2) % 4);
+        }
+        for (int i = 0; i < 64; i++) {
+            assertEquals("node_" + i, proposer.propose("shard_" + i, "node_x"));
+            assertEquals("node_" + i, groups.get(proposer.groupOf("shard_" + i)).read("shard_" + i));
+        }
+        assertNull(BlockingAcceptorAdapter.await(proposer.readAsync("unknown")));
+    }
+
+    @Test
+    public void test_move_waits_for_running_proposals() {
+        HeldGroup from = new HeldGroup();
+        HeldGroup to = new HeldGroup();
+        proposer = new ShardedProposer(Arrays.asList(from, to), 2);
+        int slot = proposer.slotOf("var");
+        proposer.rebalance(slot, 0);
+
+        CompletableFuture<Object> running = proposer.proposeAsync("var", "old");
+        CompletableFuture<Void> moved = proposer.rebalance(slot, 1);
+        CompletableFuture<Object> waiting = proposer.proposeAsync("var", "new");
+        assertFalse(moved.isDone());
+        assertTrue(to.proposals.isEmpty());
+
+        // the value chosen in the old group while moving is carried over
+        from.chosen.put("var", "old");
+        from.proposals.remove(0).complete("old");
+        assertEquals("old", running.join());
+        assertTrue(moved.isDone());
+        to.proposals.remove(0).complete(to.chosen.get("var"));
+        assertEquals("old", waiting.join());
+    }
+
+    /**
+     * A group whose proposals finish only when the test completes them
+     */
+    private static class HeldGroup implements AsyncProposer {
+
+        private final List<CompletableFuture<Object>> proposals = new ArrayList<>();
+        private final Map<Object, Object>             chosen    = new HashMap<>();
+
+        @Override
+        public CompletableFuture<Object> proposeAsync(Object var, Object value) {
+            chosen.putIfAbsent(var, value);
+            CompletableFuture<Object> proposal = new CompletableFuture<>();
+            proposals.add(proposal);
+            return proposal;
+        }
+
+        @Override
+        public CompletableFuture<Object> readAsync(Object var) {
+            return CompletableFuture.completedFuture(chosen.get(var));
+        }
+
+        @Override
+        public void stop() {
+        }
+    }
+
+    @After
+    public void after() {
+        if (proposer != null) {
+            proposer.stop();
+        }
+    }
+}
@@ -0,0 +1,65 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SimulationTest {
+
+    @Test
+    public void test_replay() {
+        Simulation first = faulty(42L, false);
+        Simulation second = faulty(42L, false);
+        String report = first.run(2000, 60, TimeUnit.SECONDS).toString();
+        assertEquals(report, second.run(2000, 60, TimeUnit.SECONDS).toString());
+        // the phase and acceptor latencies are in virtual time too
+        assertEquals(latencies(first), latencies(second));
+    }
+
+    @Test
+    public void test_loss_and_crashes() {
+        Simulation.Report report = faulty(7L, false).run(5000, 60, TimeUnit.SECONDS);
+        // a lost message costs a round, not the proposal
+        assertEquals(report.toString(), 5000, report.getDecisions());
+        assertEquals(report.toString(), 0, report.getFailures());
+        assertTrue(report.toString(), report.getThroughput() > 1000);
+    }
+
+    @Test
+    public void test_contended() {
+        Simulation.Report report = faulty(7L, true).run(500, 60, TimeUnit.SECONDS);
+        assertEquals(report.toString(), 500, report.getDecisions());
+        assertEquals(report.toString(), 0, report.getFailures());
+        // dueling proposers lose rounds to each other
+        assertTrue(report.toString(), report.getRoundsPerDecision() > 1);
+    }
+
+    private static String latencies(Simulation simulation) {
+        StringBuilder latencies = new StringBuilder();
+        for (String name : new String[] { "proposer_0.phase1.latency", "proposer_0.phase2.latency",
+                "proposer_0.acceptor_0.latency" }) {
+            DefaultMetrics.DefaultHistogram histogram = simulation.getMetrics().histogram(name);
+            latencies.append(name).append(' ').append(histogram.getCount()).append(' ')
+                    .append(histogram.getValueAtPercentile(50)).append(' ').append(histogram.getMax()).append('\n');
+        }
+        return latencies.toString();
+    }
+
+    /**
+     * 3 proposers over 5 acceptors 1ms or more apart, losing 1% of messages, with 2 acceptors crashing for a while
+     */
+    private static Simulation faulty(long seed, boolean contended) {
+        Simulation simulation = new Simulation(seed, 5, 3,
+                Simulator.Latency.exponential(1, 1, TimeUnit.MILLISECONDS));
+        for (DefaultProposer proposer : simulation.getProposers()) {
+            proposer.setPhaseTimeout(20, TimeUnit.MILLISECONDS);
+        }
+        simulation.setLossRate(0.01);
+        simulation.setClients(30);
+        simulation.setContended(contended);
+        simulation.getNodes().get(0).crash(100, 500, TimeUnit.MILLISECONDS);
+        simulation.getNodes().get(1).crash(300, 500, TimeUnit.MILLISECONDS);
+        return simulation;
+    }
+}